@@ -0,0 +1,169 @@
+package bench;
+
+import utils.MyDataBase;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * In-memory H2 database in MySQL mode behind MyDataBase, so the services run unchanged and
+ * without a MySQL server. The schema comes from bench-schema.sql; the tables are filled with
+ * generated data of the requested size:
+ *   product          rows / 10 lots of PRODUCT_NAMES products, one expiration date per lot
+ *   product_history  rows rows over the last HISTORY_DAYS days, oldest first
+ *   line             rows lines, LINES_PER_BASKET per basket, baskets spread over USERS users
+ *
+ * The services print a line per operation; the output is dropped unless -Dbench.verbose=true.
+ */
+public final class BenchDatabase {
+
+    public static final int PRODUCT_NAMES = 100;
+    public static final int HISTORY_DAYS = 365;
+    public static final int USERS = 100;
+    public static final int LINES_PER_BASKET = 50;
+    public static final LocalDate FIRST_EXPIRATION = LocalDate.now().plusYears(1);
+
+    private static final int BATCH_SIZE = 10_000;
+
+    static {
+        // read once by MyDataBase, so they must be set before its first use
+        setIfAbsent("db.url", "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1");
+        setIfAbsent("db.user", "sa");
+        setIfAbsent("db.password", "");
+        // H2 has no streaming mode, it rejects the Connector/J fetch size Integer.MIN_VALUE
+        setIfAbsent("db.streamFetchSize", "1000");
+        if (!Boolean.getBoolean("bench.verbose")) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    private BenchDatabase() {
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    public static String productName(int index) {
+        return "Product " + (index % PRODUCT_NAMES);
+    }
+
+    public static Date expirationDate(int lot) {
+        return Date.valueOf(FIRST_EXPIRATION.plusDays(lot / PRODUCT_NAMES));
+    }
+
+    public static int lotsFor(int rows) {
+        return Math.max(rows / 10, PRODUCT_NAMES);
+    }
+
+    // Drops everything and creates the empty schema
+    public static void reset() throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            st.execute("RUNSCRIPT FROM 'classpath:/bench-schema.sql'");
+            H2Functions.register(cnx);
+        }
+    }
+
+    public static void truncate(String table) throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement()) {
+            st.execute("TRUNCATE TABLE " + table);
+        }
+    }
+
+    // Lot i (product_id i + 1) is product i % PRODUCT_NAMES expiring FIRST_EXPIRATION + i / PRODUCT_NAMES days
+    public static void seedProducts(int lots) throws SQLException {
+        String req = "INSERT INTO product (product_id, product_name, quantity, expiration_date, version, history_total, last_history_quantity) "
+                + "VALUES (?, ?, ?, ?, 0, ?, ?)";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            cnx.setAutoCommit(false);
+            for (int i = 0; i < lots; i++) {
+                int quantity = 50 + i % 50;
+                ps.setInt(1, i + 1);
+                ps.setString(2, productName(i));
+                ps.setInt(3, quantity);
+                ps.setDate(4, expirationDate(i));
+                ps.setInt(5, quantity);
+                ps.setInt(6, quantity);
+                ps.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            cnx.commit();
+            cnx.setAutoCommit(true);
+        }
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement()) {
+            st.execute("ALTER TABLE product ALTER COLUMN product_id RESTART WITH " + (lots + 1));
+        }
+    }
+
+    // Row i belongs to lot i % lots, rows are evenly spaced in time over the last HISTORY_DAYS days
+    public static void seedHistory(int rows, int lots) throws SQLException {
+        String req = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
+        LocalDateTime start = LocalDate.now().minusDays(HISTORY_DAYS).atStartOfDay();
+        long stepMillis = HISTORY_DAYS * 86_400_000L / rows;
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            cnx.setAutoCommit(false);
+            for (int i = 0; i < rows; i++) {
+                int lot = i % lots;
+                ps.setInt(1, lot + 1);
+                ps.setString(2, productName(lot));
+                ps.setInt(3, (i * 7) % 100);
+                ps.setDate(4, expirationDate(lot));
+                ps.setTimestamp(5, Timestamp.valueOf(start.plusNanos(i * stepMillis * 1_000_000L)));
+                ps.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            cnx.commit();
+            cnx.setAutoCommit(true);
+        }
+    }
+
+    // Line i is in basket i / LINES_PER_BASKET, owned by user basket % USERS, for lot i % lots
+    public static void seedLines(int rows, int lots) throws SQLException {
+        if (lots < LINES_PER_BASKET) {
+            throw new IllegalArgumentException("A basket needs " + LINES_PER_BASKET + " different lots");
+        }
+        String req = "INSERT INTO line (line_quantity, basket_id, product_id, user_id, line_date) VALUES (?, ?, ?, ?, ?)";
+        Date today = Date.valueOf(LocalDate.now());
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            cnx.setAutoCommit(false);
+            for (int i = 0; i < rows; i++) {
+                int basketId = i / LINES_PER_BASKET + 1;
+                ps.setInt(1, 1 + i % 5);
+                ps.setInt(2, basketId);
+                ps.setInt(3, i % lots + 1);
+                ps.setInt(4, basketId % USERS);
+                ps.setDate(5, today);
+                ps.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            cnx.commit();
+            cnx.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import services.ExcelExporter;
+import services.ExcelUploader;
+import services.ProductHistoryBatchWriter;
+import utils.MyDataBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Excel export and import of product_history with `rows` rows. One call is one whole file,
+ * so each is timed as a single shot.
+ *
+ * The import reads a file exported during setup into an empty product_history, so every call
+ * inserts the same rows and rebuilds the same daily rollup. Files above
+ * ExcelUploader.STREAMING_THRESHOLD_BYTES (the 1M rows one) take the streaming path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExcelBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private File exportFile;
+    private File importFile;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException, IOException {
+        int lots = BenchDatabase.lotsFor(rows);
+        BenchDatabase.reset();
+        BenchDatabase.seedProducts(lots);
+        BenchDatabase.seedHistory(rows, lots);
+
+        exportFile = Files.createTempFile("bench-export", ".xlsx").toFile();
+        importFile = Files.createTempFile("bench-import", ".xlsx").toFile();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            ExcelExporter.exportProductHistory(cnx, importFile.getPath());
+        }
+    }
+
+    // Only the import starts from an empty product_history
+    @State(Scope.Benchmark)
+    public static class EmptyHistory {
+        @Setup(Level.Invocation)
+        public void truncate() throws SQLException {
+            BenchDatabase.truncate("product_history");
+            BenchDatabase.truncate("product_history_daily");
+        }
+    }
+
+    @Benchmark
+    public File exportProductHistory() throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            ExcelExporter.exportProductHistory(cnx, exportFile.getPath());
+        }
+        return exportFile;
+    }
+
+    @Benchmark
+    public File uploadExcel(EmptyHistory emptyHistory) throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            ExcelUploader.uploadExcel(cnx, importFile.getPath(), ProductHistoryBatchWriter.DEFAULT_CHUNK_SIZE, (rowsDone, rowsPerSecond) -> {
+            });
+        }
+        return importFile;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        exportFile.delete();
+        importFile.delete();
+    }
+}
@@ -0,0 +1,98 @@
+package bench;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * MySQL behaviour the services rely on and H2's MySQL mode does not have, registered by
+ * BenchDatabase after the schema is created.
+ */
+public final class H2Functions {
+
+    private H2Functions() {
+    }
+
+    static void register(Connection cnx) throws SQLException {
+        try (Statement st = cnx.createStatement()) {
+            st.execute("CREATE ALIAS IF NOT EXISTS DATE_FORMAT FOR 'bench.H2Functions.dateFormat'");
+            st.execute("CREATE ALIAS IF NOT EXISTS SUBSTRING_INDEX FOR 'bench.H2Functions.substringIndex'");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_line_zero_id BEFORE INSERT ON line FOR EACH ROW CALL 'bench.H2Functions$ZeroIsAutoIncrement'");
+        }
+    }
+
+    // DATE_FORMAT with the specifiers used by TimeBucket: %Y %m %d %H %i %s
+    public static String dateFormat(Timestamp value, String format) {
+        if (value == null) {
+            return null;
+        }
+        LocalDateTime t = value.toLocalDateTime();
+        StringBuilder out = new StringBuilder(format.length() + 8);
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 == format.length()) {
+                out.append(c);
+                continue;
+            }
+            char specifier = format.charAt(++i);
+            switch (specifier) {
+                case 'Y' -> out.append(String.format("%04d", t.getYear()));
+                case 'm' -> out.append(String.format("%02d", t.getMonthValue()));
+                case 'd' -> out.append(String.format("%02d", t.getDayOfMonth()));
+                case 'H' -> out.append(String.format("%02d", t.getHour()));
+                case 'i' -> out.append(String.format("%02d", t.getMinute()));
+                case 's' -> out.append(String.format("%02d", t.getSecond()));
+                default -> out.append(specifier);
+            }
+        }
+        return out.toString();
+    }
+
+    // SUBSTRING_INDEX(str, delim, count): everything before the count-th delimiter, from the right when count < 0
+    public static String substringIndex(String value, String delimiter, int count) {
+        if (value == null || delimiter.isEmpty() || count == 0) {
+            return value == null ? null : "";
+        }
+        if (count > 0) {
+            int end = -delimiter.length();
+            for (int i = 0; i < count; i++) {
+                end = value.indexOf(delimiter, end + delimiter.length());
+                if (end < 0) {
+                    return value;
+                }
+            }
+            return value.substring(0, end);
+        }
+        int start = value.length();
+        for (int i = 0; i < -count; i++) {
+            start = value.lastIndexOf(delimiter, start - 1);
+            if (start < 0) {
+                return value;
+            }
+        }
+        return value.substring(start + delimiter.length());
+    }
+
+    /**
+     * MySQL generates a new id when 0 is inserted into an AUTO_INCREMENT column, and
+     * LineService.ajouter inserts new lines with line_id 0. H2 would store the 0.
+     */
+    public static class ZeroIsAutoIncrement implements Trigger {
+
+        @Override
+        public void fire(Connection cnx, Object[] oldRow, Object[] newRow) throws SQLException {
+            if (newRow[0] instanceof Integer id && id == 0) {
+                try (Statement st = cnx.createStatement();
+                     ResultSet res = st.executeQuery("SELECT NEXT VALUE FOR line_id_seq")) {
+                    res.next();
+                    newRow[0] = res.getInt(1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import models.Line;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.LineService;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LineService with the line table holding `rows` lines (rows / 100 per user).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LineServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private LineService service;
+    private int lots;
+    private int nextBasket;
+    private int existingLine;
+    private int nextUser;
+    private Date today;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        lots = BenchDatabase.lotsFor(rows);
+        BenchDatabase.reset();
+        BenchDatabase.seedProducts(lots);
+        BenchDatabase.seedLines(rows, lots);
+
+        service = new LineService();
+        nextBasket = rows / BenchDatabase.LINES_PER_BASKET + 2;
+        today = Date.valueOf(LocalDate.now());
+    }
+
+    // A product added to a new basket: inserts a line
+    @Benchmark
+    public Line ajouterNewLine() {
+        int basketId = nextBasket++;
+        Line line = new Line(0, 1, basketId, basketId % lots + 1, basketId % BenchDatabase.USERS, today);
+        service.ajouter(line);
+        return line;
+    }
+
+    // A product added again to a basket that has it: increases the existing line
+    @Benchmark
+    public Line ajouterExistingLine() {
+        int i = existingLine;
+        existingLine = (existingLine + 1) % rows;
+        int basketId = i / BenchDatabase.LINES_PER_BASKET + 1;
+        Line line = new Line(0, 1, basketId, i % lots + 1, basketId % BenchDatabase.USERS, today);
+        service.ajouter(line);
+        return line;
+    }
+
+    @Benchmark
+    public List<Line> getLinesForUser() {
+        nextUser = (nextUser + 1) % BenchDatabase.USERS;
+        return service.getLinesForUser(nextUser);
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import models.HistoryPoint;
+import models.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.HistoryRollup;
+import services.LotIndex;
+import services.ProductDictionary;
+import services.ProductService;
+import services.TimeBucket;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductService writes (intake, versioned edit) and the Stat chart queries, with product_history
+ * holding `rows` rows and product rows / 10 lots.
+ *
+ * ajouter intakes a new lot on every call: for an existing lot H2 does not return the id set with
+ * LAST_INSERT_ID(product_id) as a generated key, so that path only runs against MySQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProductServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private ProductService service;
+    private int lots;
+    private int nextLot;
+    private Product edited;
+    private String chartProduct;
+    private LocalDate today;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        lots = BenchDatabase.lotsFor(rows);
+        BenchDatabase.reset();
+        BenchDatabase.seedProducts(lots);
+        BenchDatabase.seedHistory(rows, lots);
+        HistoryRollup.backfillAll();
+        ProductDictionary.getInstance().warm();
+        LotIndex.getInstance().warm();
+
+        service = new ProductService();
+        nextLot = lots;
+        edited = service.read(lots / 2);
+        chartProduct = BenchDatabase.productName(7);
+        today = LocalDate.now();
+    }
+
+    @Benchmark
+    public Product ajouter() {
+        int lot = nextLot++;
+        Product product = new Product(BenchDatabase.productName(lot), 10, BenchDatabase.expirationDate(lot));
+        service.ajouter(product);
+        return product;
+    }
+
+    // Same lot every time; modifier increments the version it was given, so there are no conflicts
+    @Benchmark
+    public Product modifier() {
+        edited.setQuantity(edited.getQuantity() % 100 + 1);
+        service.modifier(edited);
+        return edited;
+    }
+
+    // Stat chart over six months: daily buckets from product_history_daily
+    @Benchmark
+    public List<HistoryPoint> historySeriesByDay() {
+        return service.getProductHistorySeries(chartProduct, today.minusDays(180), today, TimeBucket.DAY);
+    }
+
+    // Stat chart over a week: hourly buckets from the raw product_history rows
+    @Benchmark
+    public List<HistoryPoint> historySeriesByHour() {
+        return service.getProductHistorySeries(chartProduct, today.minusDays(7), today, TimeBucket.HOUR);
+    }
+
+    // Raw quantities of one product over a month
+    @Benchmark
+    public List<Integer> historyDataForChart() {
+        return service.getProductHistoryDataForChart(chartProduct, Date.valueOf(today.minusDays(30)), Date.valueOf(today));
+    }
+}
@@ -0,0 +1,89 @@
+-- Schema of the foodbank database for the benchmarks, in the H2 dialect (MODE=MySQL).
+-- Mirrors the MySQL tables with db/001..010 applied. The product_history_daily trigger (db/004)
+-- has no H2 equivalent, so the rollup is built with HistoryRollup.backfillAll after seeding.
+-- The foreign key columns get the index InnoDB creates for a foreign key.
+
+CREATE TABLE product (
+    product_id            INT AUTO_INCREMENT PRIMARY KEY,
+    product_name          VARCHAR(255) NOT NULL,
+    quantity              INT          NOT NULL,
+    expiration_date       DATE         NOT NULL,
+    modified_at           TIMESTAMP    DEFAULT CURRENT_TIMESTAMP,
+    version               INT          NOT NULL DEFAULT 0,
+    history_total         BIGINT       NOT NULL DEFAULT 0,
+    last_history_quantity INT          NOT NULL DEFAULT 0,
+    CONSTRAINT uk_product_lot UNIQUE (product_name, expiration_date)
+);
+CREATE INDEX idx_product_expiration_id ON product (expiration_date, product_id);
+
+CREATE TABLE product_history (
+    id              INT AUTO_INCREMENT PRIMARY KEY,
+    product_id      INT          NOT NULL,
+    product_name    VARCHAR(255) NOT NULL,
+    quantity        INT          NOT NULL,
+    expiration_date DATE,
+    modified_at     TIMESTAMP    NOT NULL
+);
+CREATE INDEX idx_product_history_name_modified ON product_history (product_name, modified_at);
+CREATE INDEX idx_product_history_product ON product_history (product_id);
+
+CREATE TABLE basket (
+    basket_id         INT AUTO_INCREMENT PRIMARY KEY,
+    basket_status     VARCHAR(50),
+    user_id           INT,
+    confirmation_date DATE
+);
+
+-- line_id 0 is replaced by the next value of the sequence (H2Functions.ZeroIsAutoIncrement)
+CREATE SEQUENCE line_id_seq;
+CREATE TABLE line (
+    line_id       INT DEFAULT NEXT VALUE FOR line_id_seq PRIMARY KEY,
+    line_quantity INT  NOT NULL,
+    basket_id     INT  NOT NULL,
+    product_id    INT  NOT NULL,
+    user_id       INT  NOT NULL,
+    line_date     DATE,
+    CONSTRAINT uk_line_basket_product UNIQUE (basket_id, product_id)
+);
+CREATE INDEX idx_line_product ON line (product_id);
+CREATE INDEX idx_line_user ON line (user_id);
+
+CREATE TABLE product_history_daily (
+    product_id       INT          NOT NULL,
+    day              DATE         NOT NULL,
+    product_name     VARCHAR(255) NOT NULL,
+    opening_qty      INT          NOT NULL,
+    closing_qty      INT          NOT NULL,
+    min_qty          INT          NOT NULL,
+    max_qty          INT          NOT NULL,
+    inflow           INT          NOT NULL,
+    outflow          INT          NOT NULL,
+    samples          INT          NOT NULL,
+    last_modified_at TIMESTAMP    NOT NULL,
+    PRIMARY KEY (product_id, day)
+);
+CREATE INDEX idx_product_history_daily_name_day ON product_history_daily (product_name, day);
+
+CREATE TABLE product_alert_threshold (
+    product_id   INT NOT NULL PRIMARY KEY,
+    low_qty      INT NOT NULL,
+    critical_qty INT NOT NULL
+);
+
+CREATE TABLE history_journal_checkpoint (
+    journal  VARCHAR(255) NOT NULL PRIMARY KEY,
+    last_seq BIGINT       NOT NULL
+);
+
+CREATE TABLE import_checkpoint (
+    source         VARCHAR(512) NOT NULL PRIMARY KEY,
+    signature      VARCHAR(64)  NOT NULL,
+    rows_committed BIGINT       NOT NULL
+);
+
+CREATE TABLE alert_digest_sent (
+    recipient  VARCHAR(32) NOT NULL,
+    item_key   VARCHAR(64) NOT NULL,
+    sent_at_ms BIGINT      NOT NULL,
+    PRIMARY KEY (recipient, item_key)
+);
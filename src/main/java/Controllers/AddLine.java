@@ -1,6 +1,5 @@
 package Controllers;
 
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -12,14 +11,14 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.MouseEvent;
 import models.Line;
-import models.Product;
 import services.BasketService;
 import services.LineService;
+import services.LatestRequest;
 import services.ProductService;
+import services.ServiceExecutor;
+import services.StockReservationService;
 
-import java.sql.Date;
 import java.sql.SQLException;
-import java.time.LocalDate;
 import java.util.List;
 
 public class AddLine {
@@ -53,13 +52,17 @@ public class AddLine {
     private final LineService lineService = new LineService();
     private final ProductService productService = new ProductService();
     private final BasketService basketService = new BasketService();
+    private final StockReservationService reservationService = new StockReservationService();
+
+    // Switching users quickly only loads the lines of the last one picked
+    private final LatestRequest<List<Line>> linesRequest = new LatestRequest<>();
 
     @FXML
     void initialize() throws SQLException {
-        List<String> productNames = productService.getAllProductNames();
-        List<Integer> basketIds = basketService.getAllBasketIds();
-
-        nameCB.getItems().addAll(productNames);
+        ServiceExecutor.onFx(ServiceExecutor.supply(productService::getAllProductNames),
+                // one entry per product, not per lot; allocate() picks the lots
+                productNames -> nameCB.getItems().addAll(productNames.stream().distinct().toList()),
+                error -> System.err.println("Error loading product names: " + error.getMessage()));
         userCB.getItems().addAll("1", "2");
 
         // Set an event listener for userCB
@@ -87,11 +90,15 @@ public class AddLine {
         // Clear existing items
         basketCB.getItems().clear();
 
-        // Get the corresponding basketIds for the selected user
-        List<Integer> basketIdsForUser = basketService.getBasketIdsForUser(Integer.parseInt(selectedUserId));
-
-        // Add basketIds to basketCB
-        basketCB.getItems().addAll(basketIdsForUser.stream().map(Object::toString).toList());
+        // Get the corresponding basketIds for the selected user and add them to basketCB
+        int userId = Integer.parseInt(selectedUserId);
+        ServiceExecutor.onFx(ServiceExecutor.supply(() -> basketService.getBasketIdsForUser(userId)),
+                basketIdsForUser -> {
+                    if (selectedUserId.equals(userCB.getValue())) {
+                        basketCB.getItems().setAll(basketIdsForUser.stream().map(Object::toString).toList());
+                    }
+                },
+                error -> System.err.println("Error loading baskets for user: " + error.getMessage()));
     }
 
     private void loadLinesIntoTable() throws SQLException {
@@ -102,23 +109,15 @@ public class AddLine {
     private void loadLinesIntoTable(String selectedUserId) throws SQLException {
         if (selectedUserId != null && !selectedUserId.isEmpty()) {
             try {
-                List<Line> linesList = lineService.getLinesForUser(Integer.parseInt(selectedUserId));
-
-                // Update product names
-                linesList.forEach(line -> {
-                    try {
-                        line.setName(productService.read(line.getProductId()).getProductName());
-                    } catch (SQLException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-
-                ObservableList<Line> observableLinesList = FXCollections.observableList(linesList);
-
-                Platform.runLater(() -> {
-                    lineTable.setItems(observableLinesList);
-                    lineTable.refresh();
-                });
+                // Product names are filled in by the same query, which runs in the background
+                int userId = Integer.parseInt(selectedUserId);
+                linesRequest.submit(() -> lineService.getLinesForUser(userId),
+                        linesList -> {
+                            ObservableList<Line> observableLinesList = FXCollections.observableList(linesList);
+                            lineTable.setItems(observableLinesList);
+                            lineTable.refresh();
+                        },
+                        error -> System.err.println("Error loading lines for user: " + error.getMessage()));
             } catch (NumberFormatException e) {
                 e.printStackTrace();
             }
@@ -147,49 +146,37 @@ public class AddLine {
             return;
         }
 
-        // Retrieve corresponding product ID and basket ID from the database
-        int productId = productService.getProductIdByName(selectedProductName);
         int basketId = Integer.parseInt(selectedBasketStatus);
+        int userId = Integer.parseInt(selectedUserId);
+
+        // Take the quantity from the product's earliest-expiring lots and add the lines in one transaction.
+        // The stock check is done by the database, so two terminals cannot oversell the same lot.
+        ServiceExecutor.onFx(ServiceExecutor.supply(() -> reservationService.allocate(selectedProductName, lineQuantity, basketId, userId)),
+                reservation -> {
+                    if (!reservation.success()) {
+                        System.out.println("Error: " + reservation.message());
+                        System.out.println("Line Quantity: " + lineQuantity);
+                        return;
+                    }
 
-        // Retrieve the product from the database
-        Product selectedProduct = productService.read(productId);
-
-        // Debug prints to trace the issue
-        System.out.println("Selected Product: " + selectedProduct);
-
-        // Check if the selected quantity exceeds the available quantity in the product table
-        if (lineQuantity > selectedProduct.getQuantity()) {
-            System.out.println("Error: Quantity exceeds available quantity for the product.");
-            System.out.println("Line Quantity: " + lineQuantity);
-            System.out.println("Product Quantity: " + selectedProduct.getQuantity());
-            return;
-        }
-
-        // Set the line_date to the current date
-        Date currentDate = Date.valueOf(LocalDate.now());
-
-        // Create a new Line object with the current date
-        Line newLine = new Line(0, lineQuantity, basketId, productId, Integer.parseInt(selectedUserId), currentDate);
-
-        // Add the new line to the basket
-        lineService.ajouter(newLine);
-
-        // Update the quantity of the corresponding product in the Product table
-        selectedProduct.setQuantity(selectedProduct.getQuantity() - lineQuantity);
-        productService.modifier(selectedProduct);
-
-        // Check if the basket is not empty, set isEditable to true
-        if (lineTable.getItems().isEmpty()) {
-            isEditable = false;
-        } else {
-            isEditable = true;
-        }
+                    // Check if the basket is not empty, set isEditable to true
+                    if (lineTable.getItems().isEmpty()) {
+                        isEditable = false;
+                    } else {
+                        isEditable = true;
+                    }
 
-        // Refresh the TableView
-        loadLinesIntoTable(selectedUserId);
+                    // Refresh the TableView
+                    try {
+                        loadLinesIntoTable(selectedUserId);
+                    } catch (SQLException e) {
+                        System.err.println("Error loading lines for user: " + e.getMessage());
+                    }
 
-        // Optionally, you can display a success message or update the UI
-        System.out.println("Line added to the basket successfully. Product quantity updated.");
+                    // Optionally, you can display a success message or update the UI
+                    System.out.println("Line added to the basket successfully, taken from " + reservation.lines().size() + " lot(s).");
+                },
+                error -> System.out.println("Error adding line: " + error.getMessage()));
     }
 
 
@@ -216,14 +203,20 @@ public class AddLine {
 
         if (selectedLine != null) {
             // Delete the selected line from the database
-            lineService.supprimer(selectedLine.getLineId());
-
-            // Unlock and clear the fields
-            unlockFields();
-            clearFields();
-
-            // Optionally, update the TableView after deleting a line
-            loadLinesIntoTable(userCB.getValue());
+            ServiceExecutor.onFx(ServiceExecutor.run(() -> lineService.supprimer(selectedLine.getLineId())),
+                    done -> {
+                        // Unlock and clear the fields
+                        unlockFields();
+                        clearFields();
+
+                        // Optionally, update the TableView after deleting a line
+                        try {
+                            loadLinesIntoTable(userCB.getValue());
+                        } catch (SQLException e) {
+                            System.err.println("Error loading lines for user: " + e.getMessage());
+                        }
+                    },
+                    error -> System.out.println("Error deleting line: " + error.getMessage()));
         }
     }
 
@@ -246,13 +239,15 @@ public class AddLine {
             selectedLine.setLineQuantity(updatedQuantity);
 
             // Call the modifier method in LineService to update the line in the database
-            lineService.modifier(selectedLine);
-
-            // Update the TableView directly with the modified line
-            lineTable.refresh();
-
-            // Optionally, you can display a success message or update the UI
-            System.out.println("Line updated successfully.");
+            ServiceExecutor.onFx(ServiceExecutor.run(() -> lineService.modifier(selectedLine)),
+                    done -> {
+                        // Update the TableView directly with the modified line
+                        lineTable.refresh();
+
+                        // Optionally, you can display a success message or update the UI
+                        System.out.println("Line updated successfully.");
+                    },
+                    error -> System.out.println("Error updating line: " + error.getMessage()));
         }
     }
 
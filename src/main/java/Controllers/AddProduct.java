@@ -9,7 +9,9 @@ import javafx.scene.control.Button;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.TextField;
 import models.Product;
+import services.AsyncService;
 import services.ProductService;
+import services.ServiceExecutor;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -18,6 +20,7 @@ import java.time.LocalDate;
 public class AddProduct {
 
     private final ProductService ps = new ProductService();
+    private final AsyncService<Product, ProductService> asyncPs = AsyncService.of(ps);
 
     @FXML
     private Button addProduct;
@@ -44,17 +47,28 @@ public class AddProduct {
                 return; // Exit the method if any validation fails
             }
 
-            ps.ajouter(new Product(nameTF.getText(), Integer.parseInt(quantityTF.getText()), sqlDate));
-
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("Success");
-            alert.setHeaderText(null);
-            alert.setContentText("Product added successfully!");
-            alert.showAndWait();
-
-            nameTF.setText("");
-            quantityTF.setText("");
-            dateDP.setValue(null);
+            Product product = new Product(nameTF.getText(), Integer.parseInt(quantityTF.getText()), sqlDate);
+
+            // Saved in the background, the form is cleared once the insert is done
+            addProduct.setDisable(true);
+            ServiceExecutor.onFx(asyncPs.ajouter(product),
+                    done -> {
+                        addProduct.setDisable(false);
+
+                        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                        alert.setTitle("Success");
+                        alert.setHeaderText(null);
+                        alert.setContentText("Product added successfully!");
+                        alert.showAndWait();
+
+                        nameTF.setText("");
+                        quantityTF.setText("");
+                        dateDP.setValue(null);
+                    },
+                    error -> {
+                        addProduct.setDisable(false);
+                        showErrorAlert("Error adding product: " + error.getMessage());
+                    });
         } catch (NumberFormatException e) {
             showErrorAlert("Invalid quantity! Please enter a valid integer.");
         }
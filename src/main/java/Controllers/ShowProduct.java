@@ -18,9 +18,12 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.control.cell.PropertyValueFactory;
 import models.Product;
+import services.AsyncService;
 import services.NotificationService;
+import services.PagedProductList;
 import services.ProductService;
-import services.SmsSender;
+import services.ServiceExecutor;
+import services.StaleProductException;
 import tray.notification.TrayNotification;
 
 import javax.management.Notification;
@@ -31,6 +34,9 @@ public class ShowProduct {
 
 
     private final ProductService ps = new ProductService();
+    private final AsyncService<Product, ProductService> asyncPs = AsyncService.of(ps);
+    // rows are loaded page by page as the table scrolls to them
+    private PagedProductList products;
     @FXML
     private ResourceBundle resources;
 
@@ -60,9 +66,12 @@ public class ShowProduct {
 
     @FXML
     void initialize() {
-        List<Product> productList = ps.getAll();
-        ObservableList<Product> observableList = FXCollections.observableList(productList);
-        productTable.setItems(observableList);
+        products = new PagedProductList(ps, 100, 20);
+        productTable.setItems(products);
+        // pages come back in expiration order; sorting would need every row in memory
+        productName.setSortable(false);
+        productQuantity.setSortable(false);
+        productDOE.setSortable(false);
         productName.setCellValueFactory(new PropertyValueFactory<>("productName"));
         productQuantity.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         productDOE.setCellValueFactory(new PropertyValueFactory<>("expirationDate"));
@@ -125,23 +134,28 @@ public class ShowProduct {
                         updatedQuantity,
                         updatedSqlDate
                 );
-
-                // Use the modifier method to update the product
-                ps.modifier(updatedProduct);
-
-                // Check if the updated quantity is below 50 and send an SMS notification
-                if (updatedProduct.getQuantity() < 50) {
-                    String phoneNumber = "+21694856009";  // Replace with the actual phone number
-                    String message = "Product " + updatedProduct.getProductName() + " quantity is below 50!";
-                    SmsSender.sendSms(phoneNumber, message);
-                }
-
-                // Refresh the table view with the updated data
-                List<Product> productList = ps.getAll();
-                ObservableList<Product> observableList = FXCollections.observableList(productList);
-                productTable.setItems(observableList);
-
-                showSuccessAlert("Product updated successfully!");
+                // Keep the version that was read so concurrent edits are detected
+                updatedProduct.setVersion(selectedProduct.getVersion());
+
+                // Save in the background; the table and alerts are updated back on the FX thread
+                ServiceExecutor.onFx(asyncPs.modifier(updatedProduct),
+                        done -> {
+                            // Low quantities are reported by the service to StockAlertEngine; SMS go out as a digest (AlertDigest)
+
+                            // Refresh the table view with the updated data
+                            products.refresh();
+
+                            showSuccessAlert("Product updated successfully!");
+                        },
+                        error -> {
+                            if (error instanceof StaleProductException) {
+                                // Someone else changed this lot: show the current values instead of overwriting them
+                                products.refresh();
+                                showErrorAlert(error.getMessage());
+                            } else {
+                                showErrorAlert("Error updating product: " + error.getMessage());
+                            }
+                        });
 
             } catch (NumberFormatException e) {
                 showErrorAlert("Invalid quantity! Please enter a valid integer.");
@@ -179,13 +193,13 @@ public class ShowProduct {
         if (selectedProduct != null) {
             int productId = selectedProduct.getProductId();
 
-            // Delete the product from the database
-            ps.supprimer(productId);
-
-            // Remove the product from the table view
-            productTable.getItems().remove(selectedProduct);
-
-            System.out.println("Product with id " + productId + " has been deleted.");
+            // Delete the product from the database, then reload the pages so the rows after it move up
+            ServiceExecutor.onFx(asyncPs.supprimer(productId),
+                    done -> {
+                        products.refresh();
+                        System.out.println("Product with id " + productId + " has been deleted.");
+                    },
+                    error -> showErrorAlert("Error deleting product: " + error.getMessage()));
         } else {
             System.out.println("No product selected. Nothing deleted.");
         }
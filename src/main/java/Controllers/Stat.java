@@ -13,15 +13,19 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.DatePicker;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import models.HistoryPoint;
 import services.ExcelExporter;
 import services.ExcelUploader;
+import services.InventoryEvents;
+import services.LatestRequest;
 import services.ProductService;
+import services.ServiceExecutor;
+import services.TimeBucket;
 import utils.MyDataBase;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.Date;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -47,13 +51,19 @@ public class Stat {
 
 
     private ProductService productService = new ProductService();
-    private Connection cnx;
+
+    // Only the chart of the latest selection is drawn; older queries are cancelled
+    private final LatestRequest<List<HistoryPoint>> chartRequest = new LatestRequest<>();
 
     @FXML
     public void initialize() {
         // Populate the ChoiceBox with product names
-        List<String> productNames = productService.getAllProductNames();
-        productChoice.setItems(FXCollections.observableArrayList(productNames));
+        ServiceExecutor.onFx(ServiceExecutor.supply(productService::getAllProductNames),
+                productNames -> productChoice.setItems(FXCollections.observableArrayList(productNames)),
+                error -> showErrorAlert("Error loading products: " + error.getMessage()));
+
+        // Redraw when another product is picked, once the range has been chosen
+        productChoice.valueProperty().addListener((observable, oldValue, newValue) -> generateChart());
     }
 
 
@@ -64,20 +74,28 @@ public class Stat {
         LocalDate end = endDatePicker.getValue();
 
         if (productName != null && start != null && end != null && !end.isBefore(start)) {
-            List<Integer> productData = productService.getProductHistoryDataForChart(productName, Date.valueOf(start), Date.valueOf(end));
-
-            XYChart.Series<String, Integer> series = new XYChart.Series<>();
-            series.setName(productName);
-
-            // Use 'modified_at' dates as X-axis labels
-            List<LocalDate> modifiedDates = productService.getModifiedDatesForChart(productName, Date.valueOf(start), Date.valueOf(end));
-
-            for (int i = 0; i < modifiedDates.size(); i++) {
-                series.getData().add(new XYChart.Data<>(modifiedDates.get(i).toString(), productData.get(i)));
-            }
-
-            areaChart.getData().clear();
-            areaChart.getData().add(series);
+            // Bucketed by the database: one query, and a bounded number of points whatever the history size
+            TimeBucket resolution = TimeBucket.forRange(start, end);
+            InventoryEvents.ChartGeneration event = new InventoryEvents.ChartGeneration();
+            event.begin();
+            event.productName = productName;
+            event.resolution = resolution.name();
+            chartRequest.submit(() -> productService.getProductHistorySeries(productName, start, end, resolution),
+                    points -> {
+                        XYChart.Series<String, Integer> series = new XYChart.Series<>();
+                        series.setName(productName);
+
+                        // Use the bucket start as X-axis label and the last quantity of the bucket as value
+                        for (HistoryPoint point : points) {
+                            series.getData().add(new XYChart.Data<>(point.getBucketStart().format(resolution.labelFormat()), point.getLastQuantity()));
+                        }
+
+                        areaChart.getData().clear();
+                        areaChart.getData().add(series);
+                        event.points = points.size();
+                        event.commit();
+                    },
+                    error -> showErrorAlert("Error loading product history: " + error.getMessage()));
         }
     }
 
@@ -108,16 +126,15 @@ public class Stat {
         if (file != null) {
             String filePath = file.getAbsolutePath();
 
-            // Get the connection to the database
-            cnx = MyDataBase.getInstance().getConnection();
-
-            // Call the ExcelExporter to export the product_history data to Excel
-            ExcelExporter.exportProductHistory(cnx, filePath);
-
-            // Do not close the database connection here
-            // cnx.close();
-
-            showSuccessAlert("Product history exported to Excel successfully!");
+            // Runs in the background; a connection is borrowed from the pool for the duration of the export
+            ServiceExecutor.onFx(ServiceExecutor.run(() -> {
+                        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+                            // Call the ExcelExporter to export the product_history data to Excel
+                            ExcelExporter.exportProductHistory(cnx, filePath);
+                        }
+                    }),
+                    done -> showSuccessAlert("Product history exported to Excel successfully!"),
+                    error -> showErrorAlert("Error exporting product history: " + error.getMessage()));
         }
     }
 
@@ -130,25 +147,15 @@ public class Stat {
         File selectedFile = fileChooser.showOpenDialog(new Stage());
 
         if (selectedFile != null) {
-            try {
-                // Get the connection to the database
-                cnx = MyDataBase.getInstance().getConnection();
-
-                // Pass the Connection and the path of the uploaded Excel file to the uploadExcel method
-                ExcelUploader.uploadExcel(cnx, selectedFile.getAbsolutePath());
-                showSuccessAlert("Excel data uploaded successfully!");
-            } catch (Exception e) {
-                showErrorAlert("Error uploading Excel data: " + e.getMessage());
-            } /*finally {
-                // Close the database connection in the finally block to ensure it gets closed even if an exception occurs
-                if (cnx != null) {
-                    try {
-                        cnx.close();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            }*/
+            // Runs in the background; a connection is borrowed from the pool for the duration of the upload
+            ServiceExecutor.onFx(ServiceExecutor.run(() -> {
+                        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+                            // Pass the Connection and the path of the uploaded Excel file to the uploadExcel method
+                            ExcelUploader.uploadExcel(cnx, selectedFile.getAbsolutePath());
+                        }
+                    }),
+                    done -> showSuccessAlert("Excel data uploaded successfully!"),
+                    error -> showErrorAlert("Error uploading Excel data: " + error.getMessage()));
         }
     }
 
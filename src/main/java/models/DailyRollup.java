@@ -0,0 +1,73 @@
+package models;
+
+import java.sql.Date;
+
+public class DailyRollup {
+    // Attributes
+    private final int product_id;
+    private final Date day;
+    private final int opening_qty;
+    private final int closing_qty;
+    private final int min_qty;
+    private final int max_qty;
+    private final int inflow;
+    private final int outflow;
+    private final int samples;
+
+    // Constructors
+    public DailyRollup(int product_id, Date day, int opening_qty, int closing_qty, int min_qty, int max_qty, int inflow, int outflow, int samples) {
+        this.product_id = product_id;
+        this.day = day;
+        this.opening_qty = opening_qty;
+        this.closing_qty = closing_qty;
+        this.min_qty = min_qty;
+        this.max_qty = max_qty;
+        this.inflow = inflow;
+        this.outflow = outflow;
+        this.samples = samples;
+    }
+
+    // Getter methods
+    public int getProductId() {
+        return product_id;
+    }
+
+    public Date getDay() {
+        return day;
+    }
+
+    public int getOpeningQty() {
+        return opening_qty;
+    }
+
+    public int getClosingQty() {
+        return closing_qty;
+    }
+
+    public int getMinQty() {
+        return min_qty;
+    }
+
+    public int getMaxQty() {
+        return max_qty;
+    }
+
+    public int getInflow() {
+        return inflow;
+    }
+
+    public int getOutflow() {
+        return outflow;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "DailyRollup [product_id=" + product_id + ", day=" + day + ", opening=" + opening_qty +
+                ", closing=" + closing_qty + ", min=" + min_qty + ", max=" + max_qty +
+                ", inflow=" + inflow + ", outflow=" + outflow + ", samples=" + samples + "]";
+    }
+}
@@ -0,0 +1,48 @@
+package models;
+
+import java.time.LocalDateTime;
+
+public class HistoryPoint {
+    // Attributes
+    private final LocalDateTime bucketStart;
+    private final int minQuantity;
+    private final int maxQuantity;
+    private final int lastQuantity;
+    private final int samples;
+
+    // Constructors
+    public HistoryPoint(LocalDateTime bucketStart, int minQuantity, int maxQuantity, int lastQuantity, int samples) {
+        this.bucketStart = bucketStart;
+        this.minQuantity = minQuantity;
+        this.maxQuantity = maxQuantity;
+        this.lastQuantity = lastQuantity;
+        this.samples = samples;
+    }
+
+    // Getter methods
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public int getMinQuantity() {
+        return minQuantity;
+    }
+
+    public int getMaxQuantity() {
+        return maxQuantity;
+    }
+
+    public int getLastQuantity() {
+        return lastQuantity;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryPoint [bucketStart=" + bucketStart + ", min=" + minQuantity + ", max=" + maxQuantity +
+                ", last=" + lastQuantity + ", samples=" + samples + "]";
+    }
+}
@@ -0,0 +1,233 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Groups stock alerts into one SMS per recipient per window instead of one SMS per event,
+ * e.g. "Stock digest: 7 products low (2 critical), 3 expiring tomorrow. Low: ...".
+ *
+ * Alerts come from StockAlertEngine (level changes) and from an hourly scan for lots that
+ * expire tomorrow. Within a window an item is kept once per product and kind (the latest
+ * quantity wins); a product that was already in a digest for the same kind is left out for
+ * alert.digest.repeatAfterMs. Recipients are the comma-separated alert.sms.recipients.
+ *
+ * Every terminal runs a digest, and they all see the same expiring lots. What was sent is kept
+ * in alert_digest_sent (db/010), shared by all terminals: an item is only listed by the terminal
+ * that claims its row, so the same product is not sent once per terminal.
+ */
+public class AlertDigest {
+
+    public enum Kind {
+        CRITICAL,
+        LOW,
+        EXPIRING
+    }
+
+    private record Item(int productId, String productName, int quantity, Kind kind) {
+    }
+
+    private static final long WINDOW_MS = Long.getLong("alert.digest.windowMs", 10 * 60_000L);
+    private static final long REPEAT_AFTER_MS = Long.getLong("alert.digest.repeatAfterMs", 24 * 3_600_000L);
+    private static final long EXPIRY_SCAN_MS = Long.getLong("alert.digest.expiryScanMs", 3_600_000L);
+    private static final List<String> RECIPIENTS = Arrays.stream(System.getProperty("alert.sms.recipients", "+21694856009").split(","))
+            .map(String::trim).filter(s -> !s.isEmpty()).toList();
+    // names listed per kind, the counts always cover everything
+    private static final int MAX_NAMES = 5;
+
+    private static final AlertDigest INSTANCE = new AlertDigest();
+
+    // recipient -> items of the open window, keyed by product and kind
+    private final Map<String, Map<String, Item>> windows = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "alert-digest");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean started;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong digestsSent = new AtomicLong();
+
+    private AlertDigest() {
+    }
+
+    public static AlertDigest getInstance() {
+        return INSTANCE;
+    }
+
+    // Subscribes to StockAlertEngine and starts the expiry scan
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        StockAlertEngine.getInstance().addListener(alerts -> {
+            for (StockAlertEngine.StockAlert alert : alerts) {
+                Kind kind = alert.level() == StockAlertEngine.Level.CRITICAL ? Kind.CRITICAL : Kind.LOW;
+                add(alert.productId(), alert.productName(), alert.quantity(), kind);
+            }
+        });
+        scheduler.scheduleWithFixedDelay(this::scanExpiring, 0, EXPIRY_SCAN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void add(int productId, String productName, int quantity, Kind kind) {
+        received.incrementAndGet();
+        for (String recipient : RECIPIENTS) {
+            synchronized (windows) {
+                Map<String, Item> window = windows.get(recipient);
+                if (window == null) {
+                    window = new LinkedHashMap<>();
+                    windows.put(recipient, window);
+                    scheduler.schedule(() -> flush(recipient), WINDOW_MS, TimeUnit.MILLISECONDS);
+                }
+                window.put(productId + ":" + kind, new Item(productId, productName, quantity, kind));
+            }
+        }
+    }
+
+    private void flush(String recipient) {
+        Map<String, Item> window;
+        synchronized (windows) {
+            window = windows.remove(recipient);
+        }
+        if (window == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Item> items = new ArrayList<>();
+        for (Map.Entry<String, Item> entry : window.entrySet()) {
+            // a lot that went critical in this window is not listed as low as well
+            Item item = entry.getValue();
+            if (item.kind() == Kind.LOW && window.containsKey(item.productId() + ":" + Kind.CRITICAL)) {
+                continue;
+            }
+            items.add(item);
+        }
+        items = claim(recipient, items, now);
+        if (items.isEmpty()) {
+            return;
+        }
+
+        digestsSent.incrementAndGet();
+        SmsSender.sendSms(recipient, format(items));
+    }
+
+    private static String format(List<Item> items) {
+        List<Item> critical = items.stream().filter(i -> i.kind() == Kind.CRITICAL).toList();
+        List<Item> low = items.stream().filter(i -> i.kind() != Kind.EXPIRING).toList();
+        List<Item> expiring = items.stream().filter(i -> i.kind() == Kind.EXPIRING).toList();
+
+        StringBuilder message = new StringBuilder("Stock digest: ");
+        List<String> counts = new ArrayList<>();
+        if (!low.isEmpty()) {
+            counts.add(low.size() + (low.size() == 1 ? " product low" : " products low")
+                    + (critical.isEmpty() ? "" : " (" + critical.size() + " critical)"));
+        }
+        if (!expiring.isEmpty()) {
+            counts.add(expiring.size() + " expiring tomorrow");
+        }
+        message.append(String.join(", ", counts)).append('.');
+        if (!low.isEmpty()) {
+            message.append(" Low: ").append(names(low, true)).append('.');
+        }
+        if (!expiring.isEmpty()) {
+            message.append(" Expiring: ").append(names(expiring, false)).append('.');
+        }
+        return message.toString();
+    }
+
+    private static String names(List<Item> items, boolean withQuantity) {
+        String listed = items.stream().limit(MAX_NAMES)
+                .map(i -> withQuantity ? i.productName() + " (" + i.quantity() + ")" : i.productName())
+                .collect(Collectors.joining(", "));
+        return items.size() > MAX_NAMES ? listed + " +" + (items.size() - MAX_NAMES) + " more" : listed;
+    }
+
+    // The items nobody sent to the recipient within REPEAT_AFTER_MS, now marked as sent by this terminal
+    private List<Item> claim(String recipient, List<Item> items, long now) {
+        String insertQuery = "INSERT IGNORE INTO alert_digest_sent (recipient, item_key, sent_at_ms) VALUES (?, ?, ?)";
+        String updateQuery = "UPDATE alert_digest_sent SET sent_at_ms = ? WHERE recipient = ? AND item_key = ? AND sent_at_ms < ?";
+        List<Item> claimed = new ArrayList<>();
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement insertStatement = cnx.prepareStatement(insertQuery);
+             PreparedStatement updateStatement = cnx.prepareStatement(updateQuery)) {
+            for (Item item : items) {
+                String itemKey = item.productId() + ":" + item.kind();
+                insertStatement.setString(1, recipient);
+                insertStatement.setString(2, itemKey);
+                insertStatement.setLong(3, now);
+                // each statement changes the row only if it is free, so one terminal wins
+                boolean won = insertStatement.executeUpdate() == 1;
+                if (!won) {
+                    updateStatement.setLong(1, now);
+                    updateStatement.setString(2, recipient);
+                    updateStatement.setString(3, itemKey);
+                    updateStatement.setLong(4, now - REPEAT_AFTER_MS);
+                    won = updateStatement.executeUpdate() == 1;
+                }
+                if (won) {
+                    claimed.add(item);
+                } else {
+                    suppressed.incrementAndGet();
+                }
+            }
+        } catch (SQLException e) {
+            // better a repeated SMS than a lost alert
+            System.out.println("Error checking sent alerts, sending the digest as is: " + e.getMessage());
+            return items;
+        }
+        return claimed;
+    }
+
+    // Rows older than REPEAT_AFTER_MS no longer suppress anything
+    private void pruneSent() {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement("DELETE FROM alert_digest_sent WHERE sent_at_ms < ?")) {
+            ps.setLong(1, System.currentTimeMillis() - REPEAT_AFTER_MS);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Error pruning sent alerts: " + e.getMessage());
+        }
+    }
+
+    // Lots with stock left that expire tomorrow
+    private void scanExpiring() {
+        pruneSent();
+        // the index only sees this terminal's changes; one full read per scan picks up the others
+        LotIndex.getInstance().warm();
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        for (LotIndex.Lot lot : LotIndex.getInstance().expiringBetween(tomorrow, tomorrow)) {
+            add(lot.productId(), lot.productName(), lot.quantity(), Kind.EXPIRING);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(received.get(), suppressed.get(), digestsSent.get());
+    }
+
+    /**
+     * received = alerts handed to the digest, suppressed = left out as repeats, digestsSent = SMS actually sent.
+     */
+    public record Stats(long received, long suppressed, long digestsSent) {
+        public double alertsPerMessage() {
+            return digestsSent == 0 ? 0 : (double) received / digestsSent;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Runs the calls of a blocking service on ServiceExecutor.
+ *
+ * call() covers the methods that are not part of IService, e.g.
+ * {@code products.call(ps -> ps.getAllProductNames())}.
+ */
+public class AsyncService<T, S extends IService<T>> implements IAsyncService<T> {
+
+    private final S service;
+
+    public AsyncService(S service) {
+        this.service = service;
+    }
+
+    public static <T, S extends IService<T>> AsyncService<T, S> of(S service) {
+        return new AsyncService<>(service);
+    }
+
+    @Override
+    public CompletableFuture<Void> ajouter(T t) {
+        return ServiceExecutor.run(() -> service.ajouter(t));
+    }
+
+    @Override
+    public CompletableFuture<Void> modifier(T t) {
+        return ServiceExecutor.run(() -> service.modifier(t));
+    }
+
+    @Override
+    public CompletableFuture<Void> supprimer(int id) {
+        return ServiceExecutor.run(() -> service.supprimer(id));
+    }
+
+    @Override
+    public CompletableFuture<T> getOneById(int id) {
+        return ServiceExecutor.supply(() -> service.getOneById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> getAll() {
+        return ServiceExecutor.supply(service::getAll);
+    }
+
+    @Override
+    public CompletableFuture<BulkResult> ajouterAll(List<T> items) {
+        return ServiceExecutor.supply(() -> service.ajouterAll(items));
+    }
+
+    @Override
+    public CompletableFuture<BulkResult> modifierAll(List<T> items) {
+        return ServiceExecutor.supply(() -> service.modifierAll(items));
+    }
+
+    @Override
+    public CompletableFuture<BulkResult> supprimerAll(List<Integer> ids) {
+        return ServiceExecutor.supply(() -> service.supprimerAll(ids));
+    }
+
+    public <R> CompletableFuture<R> call(Function<? super S, R> method) {
+        return ServiceExecutor.supply(() -> method.apply(service));
+    }
+
+    public S getService() {
+        return service;
+    }
+}
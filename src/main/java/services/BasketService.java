@@ -5,17 +5,18 @@ import models.Basket;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import utils.MyDataBase;
 
 public class BasketService implements IService<Basket> {
-    Connection cnx = MyDataBase.getInstance().getConnection();
 
     @Override
     public void ajouter(Basket basket) {
 
         String req = "INSERT INTO `basket`(`basket_status`, `user_id`, `confirmation_date`) VALUES (?,?,?)";
-        try {
-            PreparedStatement ps = cnx.prepareStatement(req);
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setString(1, basket.getBasketStatus());
             ps.setInt(2, basket.getUserId());
             ps.setDate(3, basket.getConfirmationDate());
@@ -31,9 +32,9 @@ public class BasketService implements IService<Basket> {
     public void modifier(Basket basket) {
         String req = "UPDATE `basket` SET `basket_status`=?, `user_id`=?, `confirmation_date`=? WHERE basket_id=?";
 
-        try {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             // Using PreparedStatement to prevent SQL injection
-            PreparedStatement ps = cnx.prepareStatement(req);
 
             ps.setString(1, basket.getBasketStatus());
             ps.setInt(2, basket.getUserId());
@@ -57,9 +58,9 @@ public class BasketService implements IService<Basket> {
 
         String req = "DELETE FROM basket WHERE  basket_id = ?";
 
-        try {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             // Using PreparedStatement to prevent SQL injection
-            PreparedStatement ps = cnx.prepareStatement(req);
             ps.setInt(1, id);
 
             int rowCount = ps.executeUpdate();
@@ -74,11 +75,79 @@ public class BasketService implements IService<Basket> {
         }
     }
 
+    // Creates the baskets in one transaction; the generated basket ids are the ids of the result items
+    @Override
+    public BulkResult ajouterAll(List<Basket> baskets) {
+        long start = System.currentTimeMillis();
+        String req = "INSERT INTO `basket`(`basket_status`, `user_id`, `confirmation_date`) VALUES (?,?,?)";
+        int[] ids = new int[baskets.size()];
+
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement ps = cnx.prepareStatement(req, Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < baskets.size(); from += BatchSupport.CHUNK_SIZE) {
+                    int to = Math.min(from + BatchSupport.CHUNK_SIZE, baskets.size());
+                    for (Basket basket : baskets.subList(from, to)) {
+                        ps.setString(1, basket.getBasketStatus());
+                        ps.setInt(2, basket.getUserId());
+                        ps.setDate(3, basket.getConfirmationDate());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    // keys come back in insertion order, also for a rewritten multi-row INSERT
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (int i = from; i < to && keys.next(); i++) {
+                            ids[i] = keys.getInt(1);
+                        }
+                    }
+                }
+                cnx.commit();
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error adding " + baskets.size() + " baskets: " + e.getMessage());
+            return BulkResult.failed(new int[baskets.size()], e.getMessage(), System.currentTimeMillis() - start);
+        }
+
+        List<BulkResult.Item> items = new ArrayList<>(baskets.size());
+        for (int i = 0; i < baskets.size(); i++) {
+            items.add(new BulkResult.Item(i, ids[i], BulkResult.Status.APPLIED, null));
+        }
+        BulkResult result = new BulkResult(items, System.currentTimeMillis() - start);
+        System.out.println("Baskets added: " + result);
+        return result;
+    }
+
+    @Override
+    public BulkResult modifierAll(List<Basket> baskets) {
+        String req = "UPDATE `basket` SET `basket_status`=?, `user_id`=?, `confirmation_date`=? WHERE basket_id=?";
+        BulkResult result = BatchSupport.executeAll(req, baskets, Basket::getBasketId, (ps, basket) -> {
+            ps.setString(1, basket.getBasketStatus());
+            ps.setInt(2, basket.getUserId());
+            ps.setDate(3, basket.getConfirmationDate());
+            ps.setInt(4, basket.getBasketId());
+        }, "updating baskets");
+        System.out.println("Baskets updated: " + result);
+        return result;
+    }
+
+    // e.g. clearing the baskets of a distribution day
+    @Override
+    public BulkResult supprimerAll(List<Integer> ids) {
+        BulkResult result = BatchSupport.executeAll("DELETE FROM basket WHERE basket_id = ?", ids, Integer::intValue,
+                (ps, id) -> ps.setInt(1, id), "deleting baskets");
+        System.out.println("Baskets deleted: " + result);
+        return result;
+    }
+
     @Override
     public Basket getOneById(int id) {
         String req = "SELECT `basket_id`, `basket_status`, `user_id`, `confirmation_date` FROM `basket` WHERE basket_id=?";
 
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, id);
             ResultSet res = ps.executeQuery();
             if (res.next()) {
@@ -96,33 +165,26 @@ public class BasketService implements IService<Basket> {
 
     @Override
     public List<Basket> getAll() {
-        List<Basket> BasketsList = new ArrayList<>();
-
-        String req = "SELECT * FROM basket WHERE 1";
-        try {
-            Statement st = cnx.createStatement();
-            ResultSet res = st.executeQuery(req);
-
-            while (res.next()) {
-                int basket_id = res.getInt("basket_id");
-                String basket_status = res.getString("basket_status");
-                int user_id = res.getInt("user_id");
-                Date confirmation_date = res.getDate("confirmation_date");
-                Basket r = new Basket(basket_id, basket_status, user_id, confirmation_date);
-                BasketsList.add(r);
-            }
-        } catch (SQLException e) {
+        try (Stream<Basket> baskets = streamAll()) {
+            return baskets.collect(Collectors.toCollection(ArrayList::new));
+        } catch (DataAccessException e) {
             System.out.println(e.getMessage());
+            return new ArrayList<>();
         }
-        return BasketsList;
+    }
+
+    @Override
+    public Stream<Basket> streamAll() {
+        return RowStreams.stream("SELECT `basket_id`, `basket_status`, `user_id`, `confirmation_date` FROM basket",
+                res -> new Basket(res.getInt("basket_id"), res.getString("basket_status"), res.getInt("user_id"), res.getDate("confirmation_date")));
     }
 
     public List<Integer> getAllBasketIds() {
         List<Integer> basketIds = new ArrayList<>();
 
         String req = "SELECT `basket_id` FROM `basket` WHERE 1";
-        try {
-            Statement st = cnx.createStatement();
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement()) {
             ResultSet res = st.executeQuery(req);
 
             while (res.next()) {
@@ -140,7 +202,8 @@ public class BasketService implements IService<Basket> {
         List<Integer> basketIds = new ArrayList<>();
         String req = "SELECT `basket_id` FROM `basket` WHERE `user_id` = ?";
 
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, userId);
             ResultSet res = ps.executeQuery();
 
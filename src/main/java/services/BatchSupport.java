@@ -0,0 +1,80 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * JDBC batching shared by the bulk service methods.
+ *
+ * With rewriteBatchedStatements=true (see MyDataBase) each executeBatch of a chunk is one
+ * round trip: a multi-row INSERT, or one multi-statement packet for UPDATE/DELETE.
+ */
+class BatchSupport {
+
+    static final int CHUNK_SIZE = Integer.getInteger("service.bulk.chunkSize", 500);
+
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+
+    private BatchSupport() {
+    }
+
+    // Binds every item, runs the batch every CHUNK_SIZE items and returns the update count of each item
+    static <T> int[] executeInChunks(PreparedStatement ps, List<T> items, Binder<? super T> binder) throws SQLException {
+        int[] counts = new int[items.size()];
+        int chunkStart = 0;
+        for (int i = 0; i < items.size(); i++) {
+            binder.bind(ps, items.get(i));
+            ps.addBatch();
+            if (i + 1 - chunkStart == CHUNK_SIZE || i == items.size() - 1) {
+                int[] chunkCounts = ps.executeBatch();
+                System.arraycopy(chunkCounts, 0, counts, chunkStart, Math.min(chunkCounts.length, counts.length - chunkStart));
+                chunkStart = i + 1;
+            }
+        }
+        return counts;
+    }
+
+    // A row was written; rewritten multi-row inserts only report SUCCESS_NO_INFO
+    static boolean applied(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+
+    /**
+     * Runs one statement per item in a single transaction. Items whose statement touched no row
+     * are NOT_FOUND; any SQLException rolls everything back and fails every item.
+     */
+    static <T> BulkResult executeAll(String query, List<T> items, ToIntFunction<? super T> idOf, Binder<? super T> binder, String action) {
+        long start = System.currentTimeMillis();
+        int[] counts;
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement ps = cnx.prepareStatement(query)) {
+                counts = executeInChunks(ps, items, binder);
+                cnx.commit();
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error " + action + " " + items.size() + " rows: " + e.getMessage());
+            return BulkResult.failed(items.stream().mapToInt(idOf).toArray(), e.getMessage(), System.currentTimeMillis() - start);
+        }
+
+        List<BulkResult.Item> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            BulkResult.Status status = applied(counts[i]) ? BulkResult.Status.APPLIED : BulkResult.Status.NOT_FOUND;
+            results.add(new BulkResult.Item(i, idOf.applyAsInt(items.get(i)), status, null));
+        }
+        return new BulkResult(results, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,94 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk ajouterAll / modifierAll / supprimerAll call, one item per input element
+ * in input order.
+ *
+ * The whole call is one transaction: when a statement fails everything is rolled back and
+ * every item is FAILED. Items that were NOT_FOUND or in CONFLICT were simply not applied.
+ */
+public class BulkResult {
+
+    public enum Status {
+        APPLIED,
+        NOT_FOUND,
+        CONFLICT,
+        FAILED
+    }
+
+    public record Item(int index, int id, Status status, String message) {
+        public boolean applied() {
+            return status == Status.APPLIED;
+        }
+    }
+
+    private final List<Item> items;
+    private final long elapsedMillis;
+
+    BulkResult(List<Item> items, long elapsedMillis) {
+        this.items = Collections.unmodifiableList(items);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    // Every item failed for the same reason, e.g. the transaction was rolled back
+    static BulkResult failed(int[] ids, String message, long elapsedMillis) {
+        List<Item> items = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            items.add(new Item(i, ids[i], Status.FAILED, message));
+        }
+        return new BulkResult(items, elapsedMillis);
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public Item get(int index) {
+        return items.get(index);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public int count(Status status) {
+        int n = 0;
+        for (Item item : items) {
+            if (item.status() == status) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public boolean allApplied() {
+        return count(Status.APPLIED) == items.size();
+    }
+
+    // The items that were not applied, with the reason
+    public List<Item> getRejected() {
+        return items.stream().filter(item -> !item.applied()).toList();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        int[] counts = new int[Status.values().length];
+        for (Item item : items) {
+            counts[item.status().ordinal()]++;
+        }
+        return "BulkResult{items=" + items.size() + ", " + Arrays.stream(Status.values())
+                .filter(s -> counts[s.ordinal()] > 0)
+                .map(s -> s.name().toLowerCase() + "=" + counts[s.ordinal()])
+                .reduce((a, b) -> a + ", " + b).orElse("empty")
+                + ", " + elapsedMillis + " ms}";
+    }
+}
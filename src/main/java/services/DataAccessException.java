@@ -0,0 +1,20 @@
+package services;
+
+import java.sql.SQLException;
+
+/**
+ * SQLException raised where a checked exception cannot be thrown, e.g. while a Stream returned
+ * by RowStreams is being consumed.
+ */
+public class DataAccessException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DataAccessException(String message, SQLException cause) {
+        super(message + ": " + cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -1,7 +1,7 @@
 package services;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -11,71 +11,96 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class ExcelExporter {
+
+    // Rows kept in memory by SXSSF; older rows are flushed to a temp file
+    private static final int ROW_WINDOW = 200;
+    // Column widths are computed from the first rows instead of autoSizeColumn over the whole sheet
+    private static final int WIDTH_SAMPLE_ROWS = 500;
+    private static final int COLUMN_COUNT = 5;
+    private static final int DATE_WIDTH_CHARS = 12;
+
     public static void exportProductHistory(Connection connection, String filePath) {
-        String query = "SELECT * FROM product_history";
+        String query = "SELECT product_id, product_name, quantity, expiration_date, modified_at FROM product_history";
+        InventoryEvents.ExcelExport event = new InventoryEvents.ExcelExport();
+        event.begin();
+        event.file = filePath;
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE (the default) makes Connector/J stream rows one by one instead of buffering the whole result
+            preparedStatement.setFetchSize(RowStreams.FETCH_SIZE);
 
-        try (PreparedStatement preparedStatement = connection.prepareStatement(query);
-             ResultSet resultSet = preparedStatement.executeQuery()) {
+            SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+            workbook.setCompressTempFiles(true);
 
-            // Create a new workbook
-            Workbook workbook = new XSSFWorkbook();
-            Sheet sheet = workbook.createSheet("Product History");
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                Sheet sheet = workbook.createSheet("Product History");
 
 // Create cell style for date format
-            CellStyle dateCellStyle = workbook.createCellStyle();
-            dateCellStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-MM-dd"));
+                CellStyle dateCellStyle = workbook.createCellStyle();
+                dateCellStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-MM-dd"));
 
 // Create header row
-            Row headerRow = sheet.createRow(0);
-            headerRow.createCell(0).setCellValue("Product ID");
-            headerRow.createCell(1).setCellValue("Product Name");
-            headerRow.createCell(2).setCellValue("Quantity");
-            headerRow.createCell(3).setCellValue("Expiration Date");
-            headerRow.createCell(4).setCellValue("Modified At");
-
-// Apply date cell style to the appropriate column
-            headerRow.getCell(3).setCellStyle(dateCellStyle);
-            headerRow.getCell(4).setCellStyle(dateCellStyle);
+                String[] headers = {"Product ID", "Product Name", "Quantity", "Expiration Date", "Modified At"};
+                int[] maxChars = new int[COLUMN_COUNT];
+                Row headerRow = sheet.createRow(0);
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    headerRow.createCell(i).setCellValue(headers[i]);
+                    maxChars[i] = headers[i].length();
+                }
 
 // Fill data rows
-            int rowNum = 1;
-            while (resultSet.next()) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(resultSet.getInt("product_id"));
-                row.createCell(1).setCellValue(resultSet.getString("product_name"));
-                row.createCell(2).setCellValue(resultSet.getInt("quantity"));
-
-                // Set date values with the date cell style
-                Cell dateCell = row.createCell(3);
-                dateCell.setCellValue(resultSet.getDate("expiration_date"));
-                dateCell.setCellStyle(dateCellStyle);
-
-                Cell modifiedAtCell = row.createCell(4);
-                modifiedAtCell.setCellValue(resultSet.getTimestamp("modified_at"));
-                modifiedAtCell.setCellStyle(dateCellStyle);
-            }
-
-// Auto-size columns
-            for (int i = 0; i < 5; i++) {
-                sheet.autoSizeColumn(i);
-            }
+                int rowNum = 1;
+                while (resultSet.next()) {
+                    int productId = resultSet.getInt("product_id");
+                    String productName = resultSet.getString("product_name");
+                    int quantity = resultSet.getInt("quantity");
+
+                    Row row = sheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(productId);
+                    row.createCell(1).setCellValue(productName);
+                    row.createCell(2).setCellValue(quantity);
+
+                    // Set date values with the date cell style
+                    Cell dateCell = row.createCell(3);
+                    dateCell.setCellValue(resultSet.getDate("expiration_date"));
+                    dateCell.setCellStyle(dateCellStyle);
+
+                    Cell modifiedAtCell = row.createCell(4);
+                    modifiedAtCell.setCellValue(resultSet.getTimestamp("modified_at"));
+                    modifiedAtCell.setCellStyle(dateCellStyle);
+
+                    if (rowNum <= WIDTH_SAMPLE_ROWS) {
+                        maxChars[0] = Math.max(maxChars[0], String.valueOf(productId).length());
+                        maxChars[1] = Math.max(maxChars[1], productName != null ? productName.length() : 0);
+                        maxChars[2] = Math.max(maxChars[2], String.valueOf(quantity).length());
+                        maxChars[3] = Math.max(maxChars[3], DATE_WIDTH_CHARS);
+                        maxChars[4] = Math.max(maxChars[4], DATE_WIDTH_CHARS);
+                    }
+                }
+
+// Size columns from the sampled rows (width unit is 1/256 of a character)
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    sheet.setColumnWidth(i, Math.min(255, maxChars[i] + 2) * 256);
+                }
 
 // Write the workbook to a file
-            try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
-                workbook.write(fileOut);
+                try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
+                    workbook.write(fileOut);
+                }
+
+                event.rows = rowNum - 1;
+                System.out.println("Exported " + (rowNum - 1) + " product_history rows to Excel successfully!");
+            } finally {
+// Delete the temp files backing the flushed rows
+                workbook.dispose();
+                workbook.close();
             }
 
-// Close the workbook
-            workbook.close();
-
-            System.out.println("Exported product_history to Excel successfully!");
-
-            System.out.println("Exported product_history to Excel successfully!");
-
         } catch (SQLException | IOException e) {
             e.printStackTrace();
             System.out.println("Error exporting product_history to Excel: " + e.getMessage());
         }
+        event.commit();
     }
 
 
@@ -6,14 +6,41 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.Iterator;
 
 public class ExcelUploader {
 
+    // Files above this size are read row by row with the SAX event model instead of XSSFWorkbook
+    public static final long STREAMING_THRESHOLD_BYTES = Long.getLong("excel.streamingThresholdBytes", 5L * 1024 * 1024);
+
+    private static final int COLUMN_COUNT = 5;
+
     public static void uploadExcel(Connection connection, String filePath) {
-        try (FileInputStream fileInputStream = new FileInputStream(new File(filePath));
+        uploadExcel(connection, filePath, ProductHistoryBatchWriter.DEFAULT_CHUNK_SIZE, ProductHistoryBatchWriter.CONSOLE_PROGRESS);
+    }
+
+    // Inserts the rows in batches of chunkSize, one transaction per chunk.
+    // If the upload fails, calling it again with the same file resumes after the last committed chunk.
+    public static void uploadExcel(Connection connection, String filePath, int chunkSize, ProductHistoryBatchWriter.ProgressListener listener) {
+        File file = new File(filePath);
+        InventoryEvents.ExcelImport event = new InventoryEvents.ExcelImport();
+        event.begin();
+        event.file = filePath;
+        event.fileSize = file.length();
+        event.streaming = file.length() > STREAMING_THRESHOLD_BYTES;
+        if (event.streaming) {
+            event.rows = uploadExcelStreaming(connection, file, chunkSize, listener);
+        } else {
+            event.rows = uploadExcelInMemory(connection, file, chunkSize, listener);
+        }
+        event.commit();
+    }
+
+    // Small files: load the whole workbook with XSSFWorkbook. Returns the rows inserted, 0 when it failed
+    private static long uploadExcelInMemory(Connection connection, File file, int chunkSize, ProductHistoryBatchWriter.ProgressListener listener) {
+        try (FileInputStream fileInputStream = new FileInputStream(file);
              Workbook workbook = new XSSFWorkbook(fileInputStream)) {
 
             Sheet sheet = workbook.getSheetAt(0);
@@ -24,33 +51,28 @@ public class ExcelUploader {
                 rowIterator.next();
             }
 
-            // Prepare the SQL statement
-            String insertQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement preparedStatement = connection.prepareStatement(insertQuery)) {
-
-                while (rowIterator.hasNext()) {
-                    Row row = rowIterator.next();
-
-                    // Assuming the columns are in order: Product ID, Product Name, Quantity, Expiration Date, Modified At
-                    int productId = (int) row.getCell(0).getNumericCellValue();
-                    String productName = row.getCell(1).getStringCellValue();
-                    int quantity = (int) row.getCell(2).getNumericCellValue();
-                    java.util.Date expirationDate = row.getCell(3).getDateCellValue();
-                    java.util.Date modifiedAt = row.getCell(4).getDateCellValue();
-
-                    // Set values in the prepared statement
-                    preparedStatement.setInt(1, productId);
-                    preparedStatement.setString(2, productName);
-                    preparedStatement.setInt(3, quantity);
-                    preparedStatement.setDate(4, new java.sql.Date(expirationDate.getTime()));
-                    preparedStatement.setTimestamp(5, new java.sql.Timestamp(modifiedAt.getTime()));
-
-                    // Execute the SQL statement
-                    preparedStatement.executeUpdate();
-                }
+            try (ProductHistoryBatchWriter writer = new ProductHistoryBatchWriter(connection, file, chunkSize, listener)) {
+                try {
+                    while (rowIterator.hasNext()) {
+                        Row row = rowIterator.next();
+
+                        // Assuming the columns are in order: Product ID, Product Name, Quantity, Expiration Date, Modified At
+                        int productId = (int) row.getCell(0).getNumericCellValue();
+                        String productName = row.getCell(1).getStringCellValue();
+                        int quantity = (int) row.getCell(2).getNumericCellValue();
+                        java.util.Date expirationDate = row.getCell(3).getDateCellValue();
+                        java.util.Date modifiedAt = row.getCell(4).getDateCellValue();
 
-                System.out.println("Uploaded Excel data to product_history successfully!");
+                        writer.add(productId, productName, quantity, expirationDate, modifiedAt);
+                    }
 
+                    long inserted = writer.finish();
+                    System.out.println("Uploaded " + inserted + " rows of Excel data to product_history successfully!");
+                    return inserted;
+                } catch (SQLException e) {
+                    System.out.println("Upload stopped after " + writer.getRowsCommitted() + " committed rows, upload the same file again to resume.");
+                    throw e;
+                }
             } catch (SQLException e) {
                 e.printStackTrace();
                 System.out.println("Error uploading Excel data to product_history: " + e.getMessage());
@@ -60,5 +82,51 @@ public class ExcelUploader {
             e.printStackTrace();
             System.out.println("Error reading Excel file: " + e.getMessage());
         }
+        return 0;
+    }
+
+    // Large files: parse the sheet XML one row at a time, memory use does not depend on the file size
+    private static long uploadExcelStreaming(Connection connection, File file, int chunkSize, ProductHistoryBatchWriter.ProgressListener listener) {
+        try (ProductHistoryBatchWriter writer = new ProductHistoryBatchWriter(connection, file, chunkSize, listener)) {
+            try {
+                XlsxStreamReader.read(file, COLUMN_COUNT, (rowIndex, cells) -> {
+                    // Skip the header row
+                    if (rowIndex == 0) {
+                        return;
+                    }
+
+                    // Same column order as the in-memory path: Product ID, Product Name, Quantity, Expiration Date, Modified At
+                    int productId = (int) Double.parseDouble(cells[0]);
+                    String productName = cells[1];
+                    int quantity = (int) Double.parseDouble(cells[2]);
+                    java.util.Date expirationDate = toDate(cells[3]);
+                    java.util.Date modifiedAt = toDate(cells[4]);
+
+                    writer.add(productId, productName, quantity, expirationDate, modifiedAt);
+                });
+
+                long inserted = writer.finish();
+                System.out.println("Uploaded " + inserted + " rows of Excel data to product_history successfully!");
+                return inserted;
+            } catch (SQLException e) {
+                System.out.println("Upload stopped after " + writer.getRowsCommitted() + " committed rows, upload the same file again to resume.");
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.out.println("Error uploading Excel data to product_history: " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("Error reading Excel file: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // Dates are stored as Excel serial numbers, or as ISO text when the cell type is "d"
+    private static java.util.Date toDate(String value) {
+        if (value.indexOf('-') > 0) {
+            return java.sql.Timestamp.valueOf(LocalDateTime.parse(value.length() == 10 ? value + "T00:00:00" : value));
+        }
+        return DateUtil.getJavaDate(Double.parseDouble(value));
     }
 }
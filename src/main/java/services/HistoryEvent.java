@@ -0,0 +1,10 @@
+package services;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+
+/**
+ * One product_history row, as captured when the stock change was committed.
+ */
+record HistoryEvent(int productId, String productName, int quantity, Date expirationDate, Timestamp modifiedAt) {
+}
@@ -0,0 +1,76 @@
+package services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Writes product_history rows on the caller's connection, inside the caller's transaction.
+ *
+ * With -Dhistory.writeBehind=true the services capture the row instead and hand it to
+ * HistoryWriteBehind after their commit, so the stock change does not wait for the history insert.
+ * A crash between the commit and submit() loses the history row (see HistoryWriteBehind).
+ * Services ask writeBehind() once per transaction: it is false for the whole run when
+ * HistoryWriteBehind could not start.
+ */
+class HistoryRecorder {
+
+    static final boolean WRITE_BEHIND = Boolean.getBoolean("history.writeBehind");
+
+    // Whether this transaction's history rows go to HistoryWriteBehind; starts it on first use
+    static boolean writeBehind() {
+        return WRITE_BEHIND && HistoryWriteBehind.getInstance() != null;
+    }
+
+    private static final String SNAPSHOT_QUERY = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) "
+            + "SELECT product_id, product_name, quantity, expiration_date, ? FROM product WHERE product_id = ?";
+
+    // Copies the current state of the lot into product_history without reading it into Java first
+    static void snapshot(Connection cnx, int productId, Timestamp modifiedAt) throws SQLException {
+        try (PreparedStatement ps = cnx.prepareStatement(SNAPSHOT_QUERY)) {
+            ps.setTimestamp(1, modifiedAt);
+            ps.setInt(2, productId);
+            ps.executeUpdate();
+        }
+    }
+
+    // Reads the history row of the lot as snapshot would write it, quantity taken from quantityColumn
+    static HistoryEvent capture(Connection cnx, int productId, String quantityColumn, Timestamp modifiedAt) throws SQLException {
+        try (PreparedStatement ps = cnx.prepareStatement("SELECT product_name, " + quantityColumn + ", expiration_date FROM product WHERE product_id = ?")) {
+            ps.setInt(1, productId);
+            try (ResultSet res = ps.executeQuery()) {
+                if (!res.next()) {
+                    throw new SQLException("No product found with id " + productId);
+                }
+                return new HistoryEvent(productId, res.getString(1), res.getInt(2), res.getDate(3), modifiedAt);
+            }
+        }
+    }
+
+    // Queues captured rows for the write-behind flusher; call only after the stock change is committed
+    static void submit(List<HistoryEvent> events) {
+        if (!events.isEmpty()) {
+            HistoryWriteBehind.getInstance().submit(events);
+        }
+    }
+
+    // Recomputes product.history_total from the raw rows, for lots whose history was written
+    // without going through ProductService (Excel imports)
+    static void recomputeTotals(Connection cnx, Collection<Integer> productIds) throws SQLException {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        String ids = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        try (Statement st = cnx.createStatement()) {
+            st.executeUpdate("UPDATE product p SET p.history_total = "
+                    + "(SELECT COALESCE(SUM(h.quantity), 0) FROM product_history h WHERE h.product_id = p.product_id) "
+                    + "WHERE p.product_id IN (" + ids + ")");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package services;
+
+import models.DailyRollup;
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Daily rollup of product_history (table product_history_daily, see db/004).
+ *
+ * New history rows are folded into the rollup by a trigger as they are inserted. This class
+ * reads the rollup and rebuilds it from the raw rows: once after the table is created, and
+ * for products whose history was imported out of order (Excel uploads).
+ */
+public class HistoryRollup {
+
+    private static final String INSERT_QUERY = "INSERT INTO product_history_daily (product_id, day, product_name, opening_qty, closing_qty, "
+            + "min_qty, max_qty, inflow, outflow, samples, last_modified_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public List<DailyRollup> getDailyRollup(int productId, LocalDate startDate, LocalDate endDate) {
+        String query = "SELECT product_id, day, opening_qty, closing_qty, min_qty, max_qty, inflow, outflow, samples "
+                + "FROM product_history_daily WHERE product_id = ? AND day BETWEEN ? AND ? ORDER BY day";
+        List<DailyRollup> rollups = new ArrayList<>();
+
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
+            ps.setInt(1, productId);
+            ps.setDate(2, Date.valueOf(startDate));
+            ps.setDate(3, Date.valueOf(endDate));
+
+            ResultSet res = ps.executeQuery();
+            while (res.next()) {
+                rollups.add(new DailyRollup(res.getInt("product_id"), res.getDate("day"),
+                        res.getInt("opening_qty"), res.getInt("closing_qty"), res.getInt("min_qty"), res.getInt("max_qty"),
+                        res.getInt("inflow"), res.getInt("outflow"), res.getInt("samples")));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error fetching daily rollup: " + e.getMessage());
+        }
+        return rollups;
+    }
+
+    // Rebuilds the rollup of every product from product_history
+    public static void backfillAll() throws SQLException {
+        try (Connection writer = MyDataBase.getInstance().getConnection();
+             Statement st = writer.createStatement()) {
+            st.executeUpdate("DELETE FROM product_history_daily");
+        }
+        rebuild("SELECT product_id, product_name, quantity, modified_at FROM product_history ORDER BY product_id, modified_at");
+    }
+
+    // Rebuilds the rollup of the given products, e.g. after importing history rows for them
+    public static void backfill(Collection<Integer> productIds) throws SQLException {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        String ids = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        rebuild("SELECT product_id, product_name, quantity, modified_at FROM product_history WHERE product_id IN (" + ids + ") "
+                + "ORDER BY product_id, modified_at");
+    }
+
+    // Streams the raw history ordered by product and time, and replaces each product's rollup in its own transaction
+    private static void rebuild(String historyQuery) throws SQLException {
+        long start = System.currentTimeMillis();
+        int products = 0;
+
+        // the streamed result set keeps its connection busy, so the writes go through a second one
+        try (Connection reader = MyDataBase.getInstance().getConnection();
+             Connection writer = MyDataBase.getInstance().getConnection();
+             PreparedStatement historyStatement = reader.prepareStatement(historyQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            historyStatement.setFetchSize(RowStreams.FETCH_SIZE);
+            writer.setAutoCommit(false);
+
+            try (ResultSet res = historyStatement.executeQuery();
+                 PreparedStatement deleteStatement = writer.prepareStatement("DELETE FROM product_history_daily WHERE product_id = ?");
+                 PreparedStatement insertStatement = writer.prepareStatement(INSERT_QUERY)) {
+
+                ProductDays current = null;
+                while (res.next()) {
+                    int productId = res.getInt("product_id");
+                    if (current == null || current.productId != productId) {
+                        if (current != null) {
+                            current.write(deleteStatement, insertStatement);
+                            writer.commit();
+                            products++;
+                        }
+                        current = new ProductDays(productId);
+                    }
+                    current.add(res.getString("product_name"), res.getInt("quantity"), res.getTimestamp("modified_at"));
+                }
+                if (current != null) {
+                    current.write(deleteStatement, insertStatement);
+                    writer.commit();
+                    products++;
+                }
+            } catch (SQLException e) {
+                writer.rollback();
+                throw e;
+            }
+        }
+        System.out.println("Rebuilt daily rollup of " + products + " products in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Same folding as the trigger, applied to one product's history in time order
+    private static class ProductDays {
+        private final int productId;
+        private final List<Day> days = new ArrayList<>();
+
+        private LocalDate day;
+        private String productName;
+        private int opening, closing, min, max, inflow, outflow, samples;
+        private Timestamp lastModifiedAt;
+
+        ProductDays(int productId) {
+            this.productId = productId;
+        }
+
+        void add(String name, int quantity, Timestamp modifiedAt) {
+            LocalDate rowDay = modifiedAt.toLocalDateTime().toLocalDate();
+            if (!rowDay.equals(day)) {
+                int previous = day == null ? 0 : closing;
+                closeDay();
+                day = rowDay;
+                opening = previous;
+                closing = previous;
+                min = previous;
+                max = previous;
+                inflow = 0;
+                outflow = 0;
+                samples = 0;
+            }
+            inflow += Math.max(quantity - closing, 0);
+            outflow += Math.max(closing - quantity, 0);
+            min = Math.min(min, quantity);
+            max = Math.max(max, quantity);
+            closing = quantity;
+            samples++;
+            productName = name;
+            lastModifiedAt = modifiedAt;
+        }
+
+        private void closeDay() {
+            if (day != null) {
+                days.add(new Day(Date.valueOf(day), productName, opening, closing, min, max, inflow, outflow, samples, lastModifiedAt));
+            }
+        }
+
+        void write(PreparedStatement deleteStatement, PreparedStatement insertStatement) throws SQLException {
+            closeDay();
+            deleteStatement.setInt(1, productId);
+            deleteStatement.executeUpdate();
+
+            for (Day d : days) {
+                insertStatement.setInt(1, productId);
+                insertStatement.setDate(2, d.day());
+                insertStatement.setString(3, d.productName());
+                insertStatement.setInt(4, d.opening());
+                insertStatement.setInt(5, d.closing());
+                insertStatement.setInt(6, d.min());
+                insertStatement.setInt(7, d.max());
+                insertStatement.setInt(8, d.inflow());
+                insertStatement.setInt(9, d.outflow());
+                insertStatement.setInt(10, d.samples());
+                insertStatement.setTimestamp(11, d.lastModifiedAt());
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+        }
+    }
+
+    private record Day(Date day, String productName, int opening, int closing, int min, int max,
+                       int inflow, int outflow, int samples, Timestamp lastModifiedAt) {
+    }
+}
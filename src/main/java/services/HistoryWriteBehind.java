@@ -0,0 +1,389 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for product_history (enabled with -Dhistory.writeBehind=true).
+ *
+ * Services commit the product row and hand the history row here. Each row is appended to a
+ * local journal (history.writeBehind.journal) and put in a bounded queue. A flusher thread
+ * writes the queue to MySQL in multi-row batches at least every history.writeBehind.maxLagMs.
+ * The batch and the journal position it reaches (history_journal_checkpoint, db/008) are
+ * committed together, so at startup the journal entries after that position, and only those,
+ * are written again, by the flusher before anything newer. When the queue is full, submit()
+ * waits for the flusher instead of growing.
+ *
+ * If the checkpoint cannot be read at startup, replaying the journal could write rows twice, so
+ * write-behind stays off for the run: getInstance() returns null and the services write history
+ * in their own transaction (HistoryRecorder.writeBehind()).
+ *
+ * The checkpoint is the last position written, so rows must reach the database in journal order:
+ * the replayed entries are written first and a failed batch is retried until it succeeds, an
+ * entry is numbered and queued under the same lock, and at JVM exit the flusher is stopped and
+ * writes the batch it holds before the shutdown hook writes what is left in the queue.
+ *
+ * A row is journaled only after the stock change is committed (journaling first would replay rows
+ * of changes that were rolled back). A crash between the two loses that history row; the product
+ * row is already committed, and its history_total already counts the lost row.
+ */
+public class HistoryWriteBehind {
+
+    private static final long MAX_LAG_MS = Long.getLong("history.writeBehind.maxLagMs", 1000L);
+    private static final int CAPACITY = Integer.getInteger("history.writeBehind.capacity", 10_000);
+    private static final int BATCH_SIZE = Integer.getInteger("history.writeBehind.batchSize", 500);
+    // the journal is emptied once everything in it is written and it is larger than this
+    private static final long TRUNCATE_AFTER_BYTES = 1 << 20;
+    // how long the shutdown hook waits for the flusher to write the batch it holds
+    private static final long SHUTDOWN_WAIT_MS = 5_000L;
+
+    private static final String INSERT_QUERY = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String CHECKPOINT_QUERY = "INSERT INTO history_journal_checkpoint (journal, last_seq) VALUES (?, ?) "
+            + "ON DUPLICATE KEY UPDATE last_seq = GREATEST(last_seq, VALUES(last_seq))";
+
+    private static volatile HistoryWriteBehind instance;
+    // set when the checkpoint could not be read; write-behind is off until the next start
+    private static volatile boolean unavailable;
+
+    private record Entry(long seq, HistoryEvent event) {
+    }
+
+    private final Path journal;
+    private final String journalName;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    // journal entries the database has not seen at startup, written by the flusher before the queue
+    private final ArrayDeque<Entry> backlog = new ArrayDeque<>();
+    // guards the journal and lastSeq; entries are queued while holding it, so the queue is in seq order
+    private final Object journalLock = new Object();
+    private final Thread flusher;
+    private BufferedWriter journalWriter;
+    private long lastSeq;
+    private volatile long flushedSeq;
+    // set while the flusher retries a batch, the shutdown flush must not write past it
+    private volatile boolean failing;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    private HistoryWriteBehind(Path journal) throws SQLException {
+        this.journal = journal.toAbsolutePath();
+        this.journalName = journalName(this.journal);
+        recover();
+
+        flusher = new Thread(this::run, "history-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "history-flusher-shutdown"));
+    }
+
+    // null when write-behind could not start in this run
+    public static HistoryWriteBehind getInstance() {
+        if (instance == null && !unavailable) {
+            synchronized (HistoryWriteBehind.class) {
+                if (instance == null && !unavailable) {
+                    try {
+                        instance = new HistoryWriteBehind(Paths.get(System.getProperty("history.writeBehind.journal", "history.journal")));
+                    } catch (SQLException e) {
+                        unavailable = true;
+                        System.out.println("Could not read the history checkpoint, history is written synchronously until the next start: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Starts writing what the last run left in the journal; does nothing unless history.writeBehind is on
+    public static void startIfEnabled() {
+        if (HistoryRecorder.WRITE_BEHIND) {
+            getInstance();
+        }
+    }
+
+    // Journals the rows and queues them for the flusher; call after the stock change is committed
+    void submit(List<HistoryEvent> events) {
+        boolean interrupted = false;
+        for (HistoryEvent event : events) {
+            boolean stalled = false;
+            synchronized (journalLock) {
+                // only submit() adds to the queue, and only under this lock, so a free slot stays free
+                while (queue.remainingCapacity() == 0) {
+                    if (!stalled) {
+                        stalled = true;
+                        stalls.incrementAndGet();
+                    }
+                    try {
+                        journalLock.wait(MAX_LAG_MS);
+                    } catch (InterruptedException e) {
+                        // a journaled row that is not queued would be skipped by the checkpoint
+                        interrupted = true;
+                    }
+                }
+                Entry entry = new Entry(++lastSeq, event);
+                appendToJournal(entry);
+                queue.add(entry);
+            }
+            submitted.incrementAndGet();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(submitted.get(), written.get(), batches.get(), queue.size(), stalls.get(), flushFailures.get(), maxLagMillis.get());
+    }
+
+    /**
+     * stalls = submits that waited for a full queue, maxLagMillis = longest time a row waited before being written.
+     */
+    public record Stats(long submitted, long written, long batches, int pending, long stalls, long flushFailures, long maxLagMillis) {
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!backlog.isEmpty()) {
+                while (batch.size() < BATCH_SIZE && !backlog.isEmpty()) {
+                    batch.add(backlog.poll());
+                }
+                writeWithRetry(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopped by the shutdown hook; the backlog stays in the journal
+            return;
+        }
+        while (true) {
+            try {
+                Entry first = queue.poll(MAX_LAG_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // gather what else arrived, the oldest row decides how long we may wait
+                long deadline = first.event().modifiedAt().getTime() + MAX_LAG_MS;
+                while (batch.size() < BATCH_SIZE) {
+                    long wait = deadline - System.currentTimeMillis();
+                    Entry next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                synchronized (journalLock) {
+                    journalLock.notifyAll();
+                }
+                writeWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // stopped by the shutdown hook; a batch that is failing stays in the journal
+                if (!batch.isEmpty() && !failing) {
+                    try {
+                        write(batch);
+                    } catch (SQLException ex) {
+                        failing = true;
+                        System.out.println("History rows left in " + journal + ": " + ex.getMessage());
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void writeWithRetry(List<Entry> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                failing = false;
+                return;
+            } catch (SQLException e) {
+                failing = true;
+                flushFailures.incrementAndGet();
+                System.out.println("Error writing " + batch.size() + " history rows (attempt " + attempt + "): " + e.getMessage());
+                // the rows stay in the journal; keep trying so the order of the history is preserved
+                Thread.sleep(Math.min(30_000L, 500L << Math.min(attempt, 6)));
+            }
+        }
+    }
+
+    private synchronized void write(List<Entry> batch) throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement insertStatement = cnx.prepareStatement(INSERT_QUERY);
+                 PreparedStatement checkpointStatement = cnx.prepareStatement(CHECKPOINT_QUERY)) {
+                for (Entry entry : batch) {
+                    HistoryEvent event = entry.event();
+                    insertStatement.setInt(1, event.productId());
+                    insertStatement.setString(2, event.productName());
+                    insertStatement.setInt(3, event.quantity());
+                    insertStatement.setDate(4, event.expirationDate());
+                    insertStatement.setTimestamp(5, event.modifiedAt());
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+
+                long seq = batch.get(batch.size() - 1).seq();
+                checkpointStatement.setString(1, journalName);
+                checkpointStatement.setLong(2, seq);
+                checkpointStatement.executeUpdate();
+                cnx.commit();
+                flushedSeq = seq;
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        }
+
+        written.addAndGet(batch.size());
+        batches.incrementAndGet();
+        long lag = System.currentTimeMillis() - batch.get(0).event().modifiedAt().getTime();
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+        truncateJournalIfDone();
+    }
+
+    // Best effort at JVM exit; anything left is written from the journal at the next start
+    private void shutdown() {
+        flusher.interrupt();
+        try {
+            flusher.join(SHUTDOWN_WAIT_MS);
+        } catch (InterruptedException e) {
+            return;
+        }
+        // writing the queue past a batch the flusher still holds would move the checkpoint past it
+        if (flusher.isAlive() || failing || !backlog.isEmpty()) {
+            return;
+        }
+        List<Entry> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += BATCH_SIZE) {
+            try {
+                write(rest.subList(from, Math.min(from + BATCH_SIZE, rest.size())));
+            } catch (SQLException e) {
+                System.out.println("History rows left in " + journal + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // ---- journal ----
+
+    private void appendToJournal(Entry entry) {
+        HistoryEvent event = entry.event();
+        try {
+            if (journalWriter == null) {
+                journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            journalWriter.write(entry.seq() + " " + event.productId() + " "
+                    + Base64.getEncoder().encodeToString(event.productName().getBytes(StandardCharsets.UTF_8)) + " "
+                    + event.quantity() + " " + event.expirationDate().toLocalDate().toEpochDay() + " " + event.modifiedAt().getTime());
+            journalWriter.newLine();
+            journalWriter.flush();
+        } catch (IOException e) {
+            System.out.println("Could not write history journal " + journal + ": " + e.getMessage());
+        }
+    }
+
+    private void truncateJournalIfDone() {
+        synchronized (journalLock) {
+            try {
+                if (flushedSeq == lastSeq && Files.exists(journal) && Files.size(journal) > TRUNCATE_AFTER_BYTES) {
+                    if (journalWriter != null) {
+                        journalWriter.close();
+                        journalWriter = null;
+                    }
+                    // lastSeq keeps counting, the checkpoint stays valid
+                    Files.write(journal, new byte[0]);
+                }
+            } catch (IOException e) {
+                System.out.println("Could not truncate history journal " + journal + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Queues the journal entries the database has not seen for the flusher, then continues numbering after them
+    private void recover() throws SQLException {
+        long checkpoint = readCheckpoint();
+        lastSeq = checkpoint;
+        flushedSeq = checkpoint;
+        if (!Files.exists(journal)) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                if (parts.length != 6) {
+                    continue; // torn last line
+                }
+                long seq = Long.parseLong(parts[0]);
+                lastSeq = Math.max(lastSeq, seq);
+                if (seq > checkpoint) {
+                    backlog.add(new Entry(seq, new HistoryEvent(Integer.parseInt(parts[1]),
+                            new String(Base64.getDecoder().decode(parts[2]), StandardCharsets.UTF_8),
+                            Integer.parseInt(parts[3]),
+                            Date.valueOf(java.time.LocalDate.ofEpochDay(Long.parseLong(parts[4]))),
+                            new Timestamp(Long.parseLong(parts[5])))));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read history journal " + journal + ": " + e.getMessage());
+        }
+
+        if (!backlog.isEmpty()) {
+            System.out.println("Writing " + backlog.size() + " history rows left in " + journal);
+        }
+    }
+
+    // 0 when this journal was never written; a failed read throws, replaying from 0 would duplicate rows
+    private long readCheckpoint() throws SQLException {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement("SELECT last_seq FROM history_journal_checkpoint WHERE journal = ?")) {
+            ps.setString(1, journalName);
+            ResultSet res = ps.executeQuery();
+            return res.next() ? res.getLong(1) : 0;
+        }
+    }
+
+    // Identifies this terminal's journal in history_journal_checkpoint
+    private static String journalName(Path journal) {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        String name = host + ":" + journal;
+        return name.length() > 255 ? name.substring(name.length() - 255) : name;
+    }
+}
@@ -0,0 +1,18 @@
+package services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of IService: every call runs on ServiceExecutor and returns at once.
+ */
+public interface IAsyncService<T> {
+    public CompletableFuture<Void> ajouter(T t);
+    public CompletableFuture<Void> modifier(T t);
+    public CompletableFuture<Void> supprimer(int id);
+    public CompletableFuture<T> getOneById(int id);
+    public CompletableFuture<List<T>> getAll();
+    public CompletableFuture<BulkResult> ajouterAll(List<T> items);
+    public CompletableFuture<BulkResult> modifierAll(List<T> items);
+    public CompletableFuture<BulkResult> supprimerAll(List<Integer> ids);
+}
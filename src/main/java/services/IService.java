@@ -3,6 +3,7 @@ package services;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface IService<T> {
     public void ajouter(T t);
@@ -10,4 +11,12 @@ public interface IService<T> {
     public void supprimer(int id);
     public T getOneById(int id);
     public List<T> getAll();
+
+    // Single pass over the whole table in bounded memory; close the stream (try-with-resources) when done
+    public Stream<T> streamAll();
+
+    // Bulk variants: one transaction, batched statements, one result item per input element
+    public BulkResult ajouterAll(List<T> items);
+    public BulkResult modifierAll(List<T> items);
+    public BulkResult supprimerAll(List<Integer> ids);
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the inventory operations, shown under "Inventory" in JDK
+ * Mission Control next to the JDBC frames they contain.
+ *
+ * Usage: create, begin(), fill in the fields, commit(). When no recording is running, or the
+ * event is disabled in it, begin() and commit() do nothing and the JIT drops the allocation.
+ */
+public final class InventoryEvents {
+
+    private InventoryEvents() {
+    }
+
+    @Name("tn.esprit.pidev.ProductIntake")
+    @Label("Product Intake")
+    @Category("Inventory")
+    @Description("ProductService.ajouter / ajouterAll: stock added to one or more lots")
+    @StackTrace(false)
+    public static class ProductIntake extends Event {
+        @Label("Product Id")
+        @Description("Lot that received the stock, 0 for a bulk intake")
+        public int productId;
+
+        @Label("Product Name")
+        public String productName;
+
+        @Label("Quantity")
+        public int quantity;
+
+        @Label("Lots")
+        public int lots;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("tn.esprit.pidev.StockEdit")
+    @Label("Stock Edit")
+    @Category("Inventory")
+    @Description("ProductService.modifier / modifierAll: versioned update of lots")
+    @StackTrace(false)
+    public static class StockEdit extends Event {
+        @Label("Product Id")
+        @Description("Edited lot, 0 for a bulk edit")
+        public int productId;
+
+        @Label("Quantity")
+        public int quantity;
+
+        @Label("Lots")
+        public int lots;
+
+        @Label("Applied")
+        public int applied;
+
+        @Label("Conflicts")
+        @Description("Lots changed on another terminal since they were read")
+        public int conflicts;
+    }
+
+    @Name("tn.esprit.pidev.BasketAdd")
+    @Label("Basket Add")
+    @Category("Inventory")
+    @Description("StockReservationService.allocate, called by AddLine.addToBasket")
+    @StackTrace(false)
+    public static class BasketAdd extends Event {
+        @Label("Product Name")
+        public String productName;
+
+        @Label("Product Ids")
+        @Description("Lots the quantity was taken from, earliest expiration first")
+        public String productIds;
+
+        @Label("Basket Id")
+        public int basketId;
+
+        @Label("Quantity")
+        public int quantity;
+
+        @Label("Attempts")
+        @Description("More than one when the lot index was stale or a lock was contended")
+        public int attempts;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("tn.esprit.pidev.ExcelImport")
+    @Label("Excel Import")
+    @Category({"Inventory", "Excel"})
+    @StackTrace(false)
+    public static class ExcelImport extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("File Size")
+        @DataAmount
+        public long fileSize;
+
+        @Label("Streaming")
+        @Description("Read row by row instead of loading the workbook")
+        public boolean streaming;
+
+        @Label("Rows")
+        public long rows;
+    }
+
+    @Name("tn.esprit.pidev.ExcelExport")
+    @Label("Excel Export")
+    @Category({"Inventory", "Excel"})
+    @StackTrace(false)
+    public static class ExcelExport extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Rows")
+        public long rows;
+    }
+
+    @Name("tn.esprit.pidev.ChartGeneration")
+    @Label("Chart Generation")
+    @Category("Inventory")
+    @Description("Stat.generateChart: history query and series, until the chart is drawn")
+    @StackTrace(false)
+    public static class ChartGeneration extends Event {
+        @Label("Product Name")
+        public String productName;
+
+        @Label("Resolution")
+        public String resolution;
+
+        @Label("Points")
+        public int points;
+    }
+}
@@ -0,0 +1,49 @@
+package services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Keeps only the newest of a series of requests for the same thing (e.g. the chart of the
+ * product picked in a ChoiceBox). Submitting a request cancels the previous one, and the
+ * callbacks of a request that has been superseded are never called, even if its result
+ * arrives after the newer one.
+ *
+ * Meant to be used from the JavaFX application thread.
+ */
+public class LatestRequest<R> {
+
+    private CompletableFuture<R> current;
+
+    public CompletableFuture<R> submit(Callable<R> task, Consumer<? super R> onSuccess, Consumer<Throwable> onError) {
+        cancel();
+        CompletableFuture<R> request = ServiceExecutor.supply(task);
+        current = request;
+        ServiceExecutor.onFx(request,
+                value -> {
+                    if (request == current) {
+                        current = null;
+                        onSuccess.accept(value);
+                    }
+                },
+                error -> {
+                    if (request == current) {
+                        current = null;
+                        onError.accept(error);
+                    }
+                });
+        return request;
+    }
+
+    public void cancel() {
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    public boolean isPending() {
+        return current != null;
+    }
+}
@@ -6,60 +6,45 @@ import utils.MyDataBase;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class LineService implements IService<Line> {
-    Connection cnx = MyDataBase.getInstance().getConnection();
 
     @Override
     public void ajouter(Line line) {
-        String selectQuery = "SELECT * FROM line WHERE basket_id = ? AND product_id = ?";
-        String updateQuery = "UPDATE line SET line_quantity = ? WHERE basket_id = ? AND product_id = ?";
-        String insertQuery = "INSERT INTO line (line_id, line_quantity, basket_id, product_id, user_id, line_date) VALUES (?, ?, ?, ?, ?, ?)";
-
-        try {
-            // Check if the line with the same basket_id and product_id already exists
-            PreparedStatement selectStatement = cnx.prepareStatement(selectQuery);
-            selectStatement.setInt(1, line.getBasketId());
-            selectStatement.setInt(2, line.getProductId());
-
-            ResultSet resultSet = selectStatement.executeQuery();
-
-            if (resultSet.next()) {
-                // Line already exists, update the line_quantity
-                int existingQuantity = resultSet.getInt("line_quantity");
-                int newQuantity = existingQuantity + line.getLineQuantity();
-
-                PreparedStatement updateStatement = cnx.prepareStatement(updateQuery);
-                updateStatement.setInt(1, newQuantity);
-                updateStatement.setInt(2, line.getBasketId());
-                updateStatement.setInt(3, line.getProductId());
-
-                updateStatement.executeUpdate();
-            } else {
-                // Line doesn't exist, insert a new record
-                PreparedStatement insertStatement = cnx.prepareStatement(insertQuery);
-                insertStatement.setInt(1, line.getLineId());
-                insertStatement.setInt(2, line.getLineQuantity());
-                insertStatement.setInt(3, line.getBasketId());
-                insertStatement.setInt(4, line.getProductId());
-                insertStatement.setInt(5, line.getUserId());
-                insertStatement.setDate(6, line.getLineDate());
-
-                insertStatement.executeUpdate();
-            }
-
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            ajouter(cnx, line);
             System.out.println("Line added/updated successfully!");
         } catch (SQLException e) {
             System.out.println("Error adding/updating line: " + e.getMessage());
         }
     }
 
+    // Adds the line on the caller's connection so it can share a transaction (see StockReservationService).
+    // A basket holds one line per product: adding the same product again increases its quantity.
+    void ajouter(Connection cnx, Line line) throws SQLException {
+        String upsertQuery = "INSERT INTO line (line_id, line_quantity, basket_id, product_id, user_id, line_date) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE line_quantity = line_quantity + VALUES(line_quantity)";
+
+        try (PreparedStatement upsertStatement = cnx.prepareStatement(upsertQuery)) {
+            upsertStatement.setInt(1, line.getLineId());
+            upsertStatement.setInt(2, line.getLineQuantity());
+            upsertStatement.setInt(3, line.getBasketId());
+            upsertStatement.setInt(4, line.getProductId());
+            upsertStatement.setInt(5, line.getUserId());
+            upsertStatement.setDate(6, line.getLineDate());
+
+            upsertStatement.executeUpdate();
+        }
+    }
+
     @Override
     public void modifier(Line line) {
         String req = "UPDATE `line` SET `line_quantity`=?, `basket_id`=?, `product_id`=?, `user_id`=?, `line_date`=? WHERE line_id=?";
 
-        try {
-            PreparedStatement ps = cnx.prepareStatement(req);
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
 
             ps.setInt(1, line.getLineQuantity());
             ps.setInt(2, line.getBasketId());
@@ -84,8 +69,8 @@ public class LineService implements IService<Line> {
     public void supprimer(int id) {
         String req = "DELETE FROM line WHERE  line_id = ?";
 
-        try {
-            PreparedStatement ps = cnx.prepareStatement(req);
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, id);
 
             int rowCount = ps.executeUpdate();
@@ -100,11 +85,53 @@ public class LineService implements IService<Line> {
         }
     }
 
+    // Same upsert as ajouter, batched: lines for a product already in the basket add to its quantity.
+    // No stock is reserved here, use StockReservationService for that.
+    @Override
+    public BulkResult ajouterAll(List<Line> lines) {
+        String upsertQuery = "INSERT INTO line (line_id, line_quantity, basket_id, product_id, user_id, line_date) VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE line_quantity = line_quantity + VALUES(line_quantity)";
+        BulkResult result = BatchSupport.executeAll(upsertQuery, lines, Line::getLineId, (ps, line) -> {
+            ps.setInt(1, line.getLineId());
+            ps.setInt(2, line.getLineQuantity());
+            ps.setInt(3, line.getBasketId());
+            ps.setInt(4, line.getProductId());
+            ps.setInt(5, line.getUserId());
+            ps.setDate(6, line.getLineDate());
+        }, "adding lines");
+        System.out.println("Lines added/updated: " + result);
+        return result;
+    }
+
+    @Override
+    public BulkResult modifierAll(List<Line> lines) {
+        String req = "UPDATE `line` SET `line_quantity`=?, `basket_id`=?, `product_id`=?, `user_id`=?, `line_date`=? WHERE line_id=?";
+        BulkResult result = BatchSupport.executeAll(req, lines, Line::getLineId, (ps, line) -> {
+            ps.setInt(1, line.getLineQuantity());
+            ps.setInt(2, line.getBasketId());
+            ps.setInt(3, line.getProductId());
+            ps.setInt(4, line.getUserId());
+            ps.setDate(5, line.getLineDate());
+            ps.setInt(6, line.getLineId());
+        }, "updating lines");
+        System.out.println("Lines updated: " + result);
+        return result;
+    }
+
+    @Override
+    public BulkResult supprimerAll(List<Integer> ids) {
+        BulkResult result = BatchSupport.executeAll("DELETE FROM line WHERE line_id = ?", ids, Integer::intValue,
+                (ps, id) -> ps.setInt(1, id), "deleting lines");
+        System.out.println("Lines deleted: " + result);
+        return result;
+    }
+
     @Override
     public Line getOneById(int id) {
         String req = "SELECT `line_id`, `line_quantity`, `basket_id`, `product_id`, `user_id`, `line_date` FROM `line` WHERE line_id=?";
 
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, id);
             ResultSet res = ps.executeQuery();
             if (res.next()) {
@@ -124,46 +151,39 @@ public class LineService implements IService<Line> {
 
     @Override
     public List<Line> getAll() {
-        List<Line> linesList = new ArrayList<>();
-
-        String req = "SELECT * FROM line";
-        try {
-            Statement st = cnx.createStatement();
-            ResultSet res = st.executeQuery(req);
-
-            while (res.next()) {
-                int line_id = res.getInt("line_id");
-                int line_quantity = res.getInt("line_quantity");
-                int basket_id = res.getInt("basket_id");
-                int product_id = res.getInt("product_id");
-                int user_id = res.getInt("user_id");
-                Date line_date = res.getDate("line_date");
-
-                // Fetch the product name using ProductService
-                String productName = fetchProductName(product_id);
-
-                Line line = new Line(line_id, line_quantity, basket_id, product_id, user_id, line_date);
-                line.setName(productName); // Set the product name
-                linesList.add(line);
-            }
-        } catch (SQLException e) {
+        try (Stream<Line> lines = streamAll()) {
+            return lines.collect(Collectors.toCollection(ArrayList::new));
+        } catch (DataAccessException e) {
             System.out.println(e.getMessage());
+            return new ArrayList<>();
         }
-        return linesList;
     }
 
-    // Helper method to fetch product name by id using ProductService
-    private String fetchProductName(int productId) {
-        ProductService productService = new ProductService();
-        return productService.getProductNameById(productId);
+    // Product names come from the join, not from one query per line
+    @Override
+    public Stream<Line> streamAll() {
+        return RowStreams.stream("SELECT l.*, p.product_name FROM line l LEFT JOIN product p ON p.product_id = l.product_id", LineService::mapLine);
+    }
+
+    public Stream<Line> streamLinesForUser(int userId) {
+        return RowStreams.stream("SELECT l.*, p.product_name FROM `line` l LEFT JOIN `product` p ON p.product_id = l.product_id WHERE l.`user_id` = ?",
+                ps -> ps.setInt(1, userId), LineService::mapLine);
     }
 
+    private static Line mapLine(ResultSet res) throws SQLException {
+        Line line = new Line(res.getInt("line_id"), res.getInt("line_quantity"), res.getInt("basket_id"),
+                res.getInt("product_id"), res.getInt("user_id"), res.getDate("line_date"));
+        line.setName(res.getString("product_name")); // Set the product name
+        return line;
+    }
 
     public List<Line> getLinesForUser(int userId) {
         List<Line> linesList = new ArrayList<>();
-        String req = "SELECT * FROM `line` WHERE `user_id` = ?";
+        // Lines come back with their product name already set (one query whatever the number of lines)
+        String req = "SELECT l.*, p.product_name FROM `line` l LEFT JOIN `product` p ON p.product_id = l.product_id WHERE l.`user_id` = ?";
 
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, userId);
             ResultSet res = ps.executeQuery();
 
@@ -174,7 +194,9 @@ public class LineService implements IService<Line> {
                 int product_id = res.getInt("product_id");
                 Date line_date = res.getDate("line_date");
 
-                linesList.add(new Line(line_id, line_quantity, basket_id, product_id, userId, line_date));
+                Line line = new Line(line_id, line_quantity, basket_id, product_id, userId, line_date);
+                line.setName(res.getString("product_name"));
+                linesList.add(line);
             }
         } catch (SQLException e) {
             System.err.println("Error fetching lines for user: " + e.getMessage());
@@ -0,0 +1,285 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the lots (product rows) of every product, in first-expiring-first-out order.
+ *
+ * A product name has one lot per expiration date (unique key, db/001). The index keeps each
+ * name's lots sorted by (expiration_date, product_id), plus one set of all lots in the same
+ * order, so "lots of X, earliest first" and "lots expiring within N days" are range reads
+ * instead of table scans. It is loaded with one query (warm) and kept current by ProductService
+ * and StockReservationService after each commit. A name that was never loaded is read from the
+ * database on first use; if that read fails the SQLException is thrown and the index is left
+ * as it was.
+ *
+ * Quantities here are a planning hint: allocations are still checked by the database
+ * (see StockReservationService.allocate).
+ */
+public class LotIndex {
+
+    public record Lot(int productId, String productName, LocalDate expirationDate, int quantity) {
+        public boolean isExpired(LocalDate today) {
+            return expirationDate.isBefore(today);
+        }
+    }
+
+    private static final Comparator<Lot> FEFO = Comparator.comparing(Lot::expirationDate).thenComparingInt(Lot::productId);
+
+    private static final LotIndex INSTANCE = new LotIndex();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Lot> byId = new HashMap<>();
+    private final Map<String, TreeSet<Lot>> byName = new HashMap<>();
+    private final TreeSet<Lot> byExpiration = new TreeSet<>(FEFO);
+    // names whose lots are all in the index; every name once complete is true
+    private final Set<String> loadedNames = new HashSet<>();
+    private boolean complete;
+
+    private LotIndex() {
+    }
+
+    public static LotIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public void warm() {
+        List<Lot> loaded = new ArrayList<>();
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement();
+             ResultSet res = st.executeQuery("SELECT product_id, product_name, expiration_date, quantity FROM product")) {
+            while (res.next()) {
+                loaded.add(readLot(res));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error loading lot index: " + e.getMessage());
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            byId.clear();
+            byName.clear();
+            byExpiration.clear();
+            loadedNames.clear();
+            for (Lot lot : loaded) {
+                putLocked(lot);
+            }
+            complete = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Lots of the product that are not expired yet, earliest expiration first
+    public List<Lot> lotsFor(String productName) throws SQLException {
+        String key = key(productName);
+        LocalDate today = LocalDate.now();
+        lock.readLock().lock();
+        try {
+            if (complete || loadedNames.contains(key)) {
+                return unexpired(byName.get(key), today);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Lot> loaded = loadLots(productName);
+        lock.writeLock().lock();
+        try {
+            for (Lot lot : loaded) {
+                putLocked(lot);
+            }
+            loadedNames.add(key);
+            return unexpired(byName.get(key), today);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int availableQuantity(String productName) throws SQLException {
+        return lotsFor(productName).stream().mapToInt(Lot::quantity).sum();
+    }
+
+    // Lots with stock left expiring between from and to (both included), earliest first
+    public List<Lot> expiringBetween(LocalDate from, LocalDate to) {
+        if (!isComplete()) {
+            warm();
+        }
+        lock.readLock().lock();
+        try {
+            List<Lot> lots = new ArrayList<>();
+            for (Lot lot : byExpiration.subSet(new Lot(Integer.MIN_VALUE, null, from, 0), true, new Lot(Integer.MAX_VALUE, null, to, 0), true)) {
+                if (lot.quantity() > 0) {
+                    lots.add(lot);
+                }
+            }
+            return lots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lots with stock left expiring from today to today + days
+    public List<Lot> expiringWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return expiringBetween(today, today.plusDays(days));
+    }
+
+    // ---- updates, called after the change is committed ----
+
+    // Intake of quantity units into a lot (new or existing); the lot's quantity after it, -1 when the index does not hold the lot
+    public int addQuantity(int productId, String productName, LocalDate expirationDate, int quantity) {
+        lock.writeLock().lock();
+        try {
+            Lot current = byId.get(productId);
+            if (current != null) {
+                putLocked(new Lot(productId, current.productName(), current.expirationDate(), current.quantity() + quantity));
+                return current.quantity() + quantity;
+            } else if (complete || loadedNames.contains(key(productName))) {
+                // a lot the index does not know yet is a new lot
+                putLocked(new Lot(productId, productName, expirationDate, quantity));
+                return quantity;
+            }
+            return -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // New quantity and expiration date of a lot; the name is not changed by ProductService.modifier
+    public void updateLot(int productId, LocalDate expirationDate, int quantity) {
+        lock.writeLock().lock();
+        try {
+            Lot current = byId.get(productId);
+            if (current != null) {
+                putLocked(new Lot(productId, current.productName(), expirationDate, quantity));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setQuantity(int productId, int quantity) {
+        lock.writeLock().lock();
+        try {
+            Lot current = byId.get(productId);
+            if (current != null) {
+                putLocked(new Lot(productId, current.productName(), current.expirationDate(), quantity));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Re-reads the lots of a product, e.g. when the database disagreed with the index
+    public void reload(String productName) throws SQLException {
+        List<Lot> loaded = loadLots(productName);
+        String key = key(productName);
+        lock.writeLock().lock();
+        try {
+            TreeSet<Lot> stale = byName.get(key);
+            if (stale != null) {
+                for (Lot lot : new ArrayList<>(stale)) {
+                    removeLocked(lot.productId());
+                }
+            }
+            for (Lot lot : loaded) {
+                putLocked(lot);
+            }
+            loadedNames.add(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isComplete() {
+        lock.readLock().lock();
+        try {
+            return complete;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putLocked(Lot lot) {
+        removeLocked(lot.productId());
+        byId.put(lot.productId(), lot);
+        byName.computeIfAbsent(key(lot.productName()), k -> new TreeSet<>(FEFO)).add(lot);
+        byExpiration.add(lot);
+    }
+
+    private void removeLocked(int productId) {
+        Lot previous = byId.remove(productId);
+        if (previous == null) {
+            return;
+        }
+        byExpiration.remove(previous);
+        TreeSet<Lot> lots = byName.get(key(previous.productName()));
+        if (lots != null) {
+            lots.remove(previous);
+            if (lots.isEmpty()) {
+                byName.remove(key(previous.productName()));
+            }
+        }
+    }
+
+    private static List<Lot> unexpired(TreeSet<Lot> lots, LocalDate today) {
+        if (lots == null) {
+            return new ArrayList<>();
+        }
+        // tailSet skips the expired lots, which sort first
+        return new ArrayList<>(lots.tailSet(new Lot(Integer.MIN_VALUE, null, today, 0), true));
+    }
+
+    // An empty list means the product has no lots; a failed read throws, so callers never mistake it for that
+    private static List<Lot> loadLots(String productName) throws SQLException {
+        List<Lot> lots = new ArrayList<>();
+        String req = "SELECT product_id, product_name, expiration_date, quantity FROM product WHERE product_name = ?";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            ps.setString(1, productName);
+            ResultSet res = ps.executeQuery();
+            while (res.next()) {
+                lots.add(readLot(res));
+            }
+        }
+        return lots;
+    }
+
+    private static Lot readLot(ResultSet res) throws SQLException {
+        return new Lot(res.getInt("product_id"), res.getString("product_name"),
+                res.getDate("expiration_date").toLocalDate(), res.getInt("quantity"));
+    }
+
+    // Names compare case-insensitively, like the product_name column
+    private static String key(String productName) {
+        return productName.toLowerCase(Locale.ROOT);
+    }
+}
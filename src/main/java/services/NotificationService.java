@@ -4,6 +4,9 @@ import javafx.application.Platform;
 import tray.notification.NotificationType;
 import tray.notification.TrayNotification;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class NotificationService {
 
     public static void showNotification(String productName, int quantity) {
@@ -15,4 +18,27 @@ public class NotificationService {
             tray.showAndDismiss(javafx.util.Duration.seconds(5));
         });
     }
+
+    // One notification per batch of alerts from StockAlertEngine, however many lots it covers
+    public static void showStockAlerts(List<StockAlertEngine.StockAlert> alerts) {
+        String message;
+        if (alerts.size() == 1) {
+            StockAlertEngine.StockAlert alert = alerts.get(0);
+            message = alert.level() + " quantity for product: " + alert.productName() + ". Current quantity: " + alert.quantity();
+        } else {
+            long critical = alerts.stream().filter(a -> a.level() == StockAlertEngine.Level.CRITICAL).count();
+            message = alerts.size() + " products low (" + critical + " critical): "
+                    + alerts.stream().map(StockAlertEngine.StockAlert::productName).limit(5).collect(Collectors.joining(", "))
+                    + (alerts.size() > 5 ? ", ..." : "");
+        }
+        boolean anyCritical = alerts.stream().anyMatch(a -> a.level() == StockAlertEngine.Level.CRITICAL);
+
+        Platform.runLater(() -> {
+            TrayNotification tray = new TrayNotification();
+            tray.setTitle("Low Quantity Alert");
+            tray.setMessage(message);
+            tray.setNotificationType(anyCritical ? NotificationType.ERROR : NotificationType.WARNING);
+            tray.showAndDismiss(javafx.util.Duration.seconds(5));
+        });
+    }
 }
@@ -0,0 +1,156 @@
+package services;
+
+import javafx.collections.ObservableListBase;
+import models.Product;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only list of products that loads pages from the database only when a row is asked for.
+ *
+ * A TableView only calls get() for the rows on screen, so opening the table costs one page,
+ * and scrolling loads the next pages one query at a time. The table is never counted (COUNT(*)
+ * reads the whole index): the list holds the rows up to the last page loaded, plus one page of
+ * empty rows while that page was full, and grows when the scroll reaches them. Pages are fetched
+ * with keyset pagination after the previous page's last row, and at most maxCachedPages of them
+ * are kept (least recently used are dropped).
+ *
+ * The queries run on ServiceExecutor, never on the FX thread: get() returns null for a row
+ * whose page is still loading, and the rows are replaced on the FX thread when it arrives.
+ * Everything else in this class is only used from the FX thread.
+ */
+public class PagedProductList extends ObservableListBase<Product> {
+
+    private final ProductService productService;
+    private final int pageSize;
+    private final Map<Integer, List<Product>> pages;
+    // last row of every page loaded so far, the keyset starting point of the next page; a row past
+    // page 0 only exists once the page before it was loaded full, so its entry is always there
+    private final Map<Integer, Product> pageEnds = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    // bumped by refresh(), pages requested before it are dropped when they arrive
+    private int generation;
+    private int size;
+
+    public PagedProductList(ProductService productService, int pageSize, int maxCachedPages) {
+        this.productService = productService;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Product>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        load(0);
+    }
+
+    @Override
+    public Product get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        int pageIndex = index / pageSize;
+        List<Product> page = pages.get(pageIndex);
+        if (page == null) {
+            load(pageIndex);
+            return null;
+        }
+        int offset = index % pageSize;
+        // the table shrank since the page was loaded; the size follows at the next load or refresh()
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Drops the cached pages, e.g. after a product was added, updated or deleted; the rows on screen are loaded again
+    public void refresh() {
+        generation++;
+        pages.clear();
+        pageEnds.clear();
+        loading.clear();
+
+        beginChange();
+        for (int i = 0; i < size; i++) {
+            nextSet(i, null);
+        }
+        endChange();
+        load(0);
+    }
+
+    public int getCachedPageCount() {
+        return pages.size();
+    }
+
+    private void load(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        int requestGeneration = generation;
+        Product previousEnd = pageIndex == 0 ? null : pageEnds.get(pageIndex - 1);
+        ServiceExecutor.onFx(ServiceExecutor.supply(() -> previousEnd == null
+                        ? productService.getProductPage(null, 0, pageSize)
+                        : productService.getProductPage(previousEnd.getExpirationDate(), previousEnd.getProductId(), pageSize)),
+                page -> loaded(requestGeneration, pageIndex, page),
+                error -> {
+                    if (requestGeneration == generation) {
+                        // asked again the next time the TableView reads one of its rows
+                        loading.remove(pageIndex);
+                    }
+                    System.out.println("Error loading product page " + pageIndex + ": " + error.getMessage());
+                });
+    }
+
+    private void loaded(int requestGeneration, int pageIndex, List<Product> page) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading.remove(pageIndex);
+        pages.put(pageIndex, page);
+        if (!page.isEmpty()) {
+            pageEnds.put(pageIndex, page.get(page.size() - 1));
+        }
+
+        int from = pageIndex * pageSize;
+        int to = Math.min(from + page.size(), size);
+        if (from < to) {
+            beginChange();
+            for (int i = from; i < to; i++) {
+                nextSet(i, null);
+            }
+            endChange();
+        }
+        resize(sizeAfter(pageIndex, page.size()));
+    }
+
+    // A short page is the end of the table; after a full one there is at least one more page to scroll to
+    private int sizeAfter(int pageIndex, int rows) {
+        if (rows < pageSize) {
+            return pageIndex * pageSize + rows;
+        }
+        return Math.max(size, (pageIndex + 2) * pageSize);
+    }
+
+    private void resize(int newSize) {
+        int oldSize = size;
+        if (newSize == oldSize) {
+            return;
+        }
+        size = newSize;
+        beginChange();
+        if (newSize > oldSize) {
+            nextAdd(oldSize, newSize);
+        } else {
+            nextRemove(newSize, Collections.nCopies(oldSize - newSize, (Product) null));
+        }
+        endChange();
+    }
+}
@@ -0,0 +1,390 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process product_id <-> product_name dictionary.
+ *
+ * Ids are stored in an open-addressing table of primitive ints (no Integer boxing);
+ * each name maps to the sorted ids of its lots. The dictionary is loaded with one query
+ * (warm) and kept up to date by ProductService.ajouter / supprimer (modifier never renames
+ * a lot). Lookups that miss go to the database and the result is cached.
+ *
+ * Other terminals add and delete products too, so the whole dictionary is reloaded by the
+ * first access after it is -Ddictionary.maxAgeMs old (30 s by default).
+ */
+public class ProductDictionary {
+
+    private static final int EMPTY = 0; // product_id is AUTO_INCREMENT, so 0 is never a real id
+    private static final long MAX_AGE_MS = Long.getLong("dictionary.maxAgeMs", 30_000L);
+
+    private static final ProductDictionary INSTANCE = new ProductDictionary();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] ids = new int[64];
+    private String[] names = new String[64];
+    private int size;
+    private final Map<String, int[]> idsByName = new HashMap<>();
+    // true when the table holds every product, so the full name list can be served from memory
+    private boolean complete;
+    private List<String> allNamesCache;
+    // when the last reload started; 0 makes the first lookup load the whole table
+    private final AtomicLong loadedAt = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    private ProductDictionary() {
+    }
+
+    public static ProductDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    // Loads every (id, name) pair in one query
+    public void warm() {
+        loadedAt.set(System.currentTimeMillis());
+        String req = "SELECT `product_id`, `product_name` FROM `product`";
+        int[] loadedIds = new int[256];
+        List<String> loadedNames = new ArrayList<>();
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement();
+             ResultSet res = st.executeQuery(req)) {
+            while (res.next()) {
+                if (loadedNames.size() == loadedIds.length) {
+                    loadedIds = Arrays.copyOf(loadedIds, loadedIds.length * 2);
+                }
+                loadedIds[loadedNames.size()] = res.getInt("product_id");
+                loadedNames.add(res.getString("product_name"));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error loading product dictionary: " + e.getMessage());
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            clear(loadedNames.size());
+            for (int i = 0; i < loadedNames.size(); i++) {
+                putLocked(loadedIds[i], loadedNames.get(i));
+            }
+            complete = true;
+            loads.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public String getName(int productId) {
+        reloadIfExpired();
+        lock.readLock().lock();
+        try {
+            String name = names[slotOf(productId)];
+            if (name != null) {
+                hits.incrementAndGet();
+                return name;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        misses.incrementAndGet();
+        String name = queryName(productId);
+        if (name != null) {
+            put(productId, name);
+        }
+        return name;
+    }
+
+    // Lowest id among the lots with this name, -1 if there is none
+    public int getId(String productName) {
+        reloadIfExpired();
+        lock.readLock().lock();
+        try {
+            int[] lotIds = idsByName.get(productName);
+            if (lotIds != null) {
+                hits.incrementAndGet();
+                return lotIds[0];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        misses.incrementAndGet();
+        int productId = queryId(productName);
+        if (productId != -1) {
+            put(productId, productName);
+        }
+        return productId;
+    }
+
+    // One name per lot, in product_id order (same as SELECT product_name FROM product)
+    public List<String> getAllNames() {
+        reloadIfExpired();
+        lock.readLock().lock();
+        try {
+            if (complete && allNamesCache != null) {
+                hits.incrementAndGet();
+                return allNamesCache;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (complete) {
+                hits.incrementAndGet();
+                allNamesCache = buildAllNames();
+                return allNamesCache;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        misses.incrementAndGet();
+        warm();
+        lock.readLock().lock();
+        try {
+            return complete ? buildAllNames() : Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(int productId, String productName) {
+        lock.writeLock().lock();
+        try {
+            putLocked(productId, productName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Only the caller that moves loadedAt forward reloads; the others keep reading the current entries
+    private void reloadIfExpired() {
+        long last = loadedAt.get();
+        if (System.currentTimeMillis() - last >= MAX_AGE_MS
+                && loadedAt.compareAndSet(last, System.currentTimeMillis())) {
+            warm();
+        }
+    }
+
+    public Stats getStats() {
+        lock.readLock().lock();
+        try {
+            return new Stats(size, hits.get(), misses.get(), loads.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public record Stats(int entries, long hits, long misses, long loads) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    // ---- open-addressing table (linear probing, backward-shift deletion) ----
+
+    private void clear(int expected) {
+        int capacity = 64;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        ids = new int[capacity];
+        names = new String[capacity];
+        size = 0;
+        idsByName.clear();
+        allNamesCache = null;
+    }
+
+    private int slotOf(int productId) {
+        int mask = ids.length - 1;
+        int slot = mix(productId) & mask;
+        while (ids[slot] != EMPTY && ids[slot] != productId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void putLocked(int productId, String productName) {
+        if (productId == EMPTY || productName == null) {
+            return;
+        }
+        int slot = slotOf(productId);
+        String previous = names[slot];
+        if (previous != null) {
+            if (previous.equals(productName)) {
+                return;
+            }
+            unlinkName(previous, productId);
+        } else {
+            ids[slot] = productId;
+            size++;
+        }
+        names[slot] = productName;
+        linkName(productName, productId);
+        allNamesCache = null;
+        if (size * 2 > ids.length) {
+            resize();
+        }
+    }
+
+    private void removeLocked(int productId) {
+        int mask = ids.length - 1;
+        int slot = slotOf(productId);
+        if (ids[slot] == EMPTY) {
+            return;
+        }
+        unlinkName(names[slot], productId);
+        size--;
+        allNamesCache = null;
+
+        // shift following entries back so probe chains stay unbroken
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (ids[next] != EMPTY) {
+            int home = mix(ids[next]) & mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                ids[hole] = ids[next];
+                names[hole] = names[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[hole] = EMPTY;
+        names[hole] = null;
+    }
+
+    private void resize() {
+        int[] oldIds = ids;
+        String[] oldNames = names;
+        ids = new int[oldIds.length * 2];
+        names = new String[oldNames.length * 2];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = slotOf(oldIds[i]);
+                ids[slot] = oldIds[i];
+                names[slot] = oldNames[i];
+            }
+        }
+    }
+
+    private void linkName(String productName, int productId) {
+        int[] lotIds = idsByName.get(productName);
+        if (lotIds == null) {
+            idsByName.put(productName, new int[]{productId});
+            return;
+        }
+        int pos = Arrays.binarySearch(lotIds, productId);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        int[] grown = new int[lotIds.length + 1];
+        System.arraycopy(lotIds, 0, grown, 0, pos);
+        grown[pos] = productId;
+        System.arraycopy(lotIds, pos, grown, pos + 1, lotIds.length - pos);
+        idsByName.put(productName, grown);
+    }
+
+    private void unlinkName(String productName, int productId) {
+        int[] lotIds = idsByName.get(productName);
+        if (lotIds == null) {
+            return;
+        }
+        int pos = Arrays.binarySearch(lotIds, productId);
+        if (pos < 0) {
+            return;
+        }
+        if (lotIds.length == 1) {
+            idsByName.remove(productName);
+            return;
+        }
+        int[] shrunk = new int[lotIds.length - 1];
+        System.arraycopy(lotIds, 0, shrunk, 0, pos);
+        System.arraycopy(lotIds, pos + 1, shrunk, pos, lotIds.length - pos - 1);
+        idsByName.put(productName, shrunk);
+    }
+
+    private List<String> buildAllNames() {
+        int[] sortedIds = new int[size];
+        int n = 0;
+        for (int id : ids) {
+            if (id != EMPTY) {
+                sortedIds[n++] = id;
+            }
+        }
+        Arrays.sort(sortedIds);
+        List<String> result = new ArrayList<>(size);
+        for (int id : sortedIds) {
+            result.add(names[slotOf(id)]);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    // ---- database fallbacks ----
+
+    private String queryName(int productId) {
+        String req = "SELECT `product_name` FROM `product` WHERE product_id=?";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            ps.setInt(1, productId);
+            ResultSet res = ps.executeQuery();
+            if (res.next()) {
+                return res.getString("product_name");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching product name by id: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private int queryId(String productName) {
+        String req = "SELECT MIN(`product_id`) AS product_id FROM `product` WHERE `product_name`=?";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            ps.setString(1, productName);
+            ResultSet res = ps.executeQuery();
+            if (res.next() && res.getObject("product_id") != null) {
+                return res.getInt("product_id");
+            }
+        } catch (SQLException e) {
+            System.out.println("Error fetching product ID by name: " + e.getMessage());
+        }
+        return -1;
+    }
+}
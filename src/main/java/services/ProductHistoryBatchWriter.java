@@ -0,0 +1,171 @@
+package services;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Batched insert pipeline for product_history imports.
+ *
+ * Rows are sent with addBatch/executeBatch and committed one chunk per transaction.
+ * Each chunk's transaction also records the number of rows done in import_checkpoint
+ * (db/009), so a failed import can be started again and skips exactly the rows that
+ * are already in the table.
+ */
+public class ProductHistoryBatchWriter implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final String INSERT_QUERY = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String CHECKPOINT_QUERY = "INSERT INTO import_checkpoint (source, signature, rows_committed) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE signature = VALUES(signature), rows_committed = VALUES(rows_committed)";
+
+    /**
+     * Called after every committed chunk.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long rowsDone, double rowsPerSecond);
+    }
+
+    public static final ProgressListener CONSOLE_PROGRESS = (rowsDone, rowsPerSecond) ->
+            System.out.printf("Imported %d rows (%.0f rows/sec)%n", rowsDone, rowsPerSecond);
+
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private final PreparedStatement checkpointStatement;
+    private final boolean previousAutoCommit;
+    private final int chunkSize;
+    private final String source;
+    private final String sourceSignature;
+    private final ProgressListener listener;
+    private final long resumeFrom;
+    private final long startNanos = System.nanoTime();
+
+    // products whose history changed, their daily rollup is rebuilt when the import finishes
+    private final Set<Integer> touchedProducts = new HashSet<>();
+
+    private long rowsSeen;
+    private long rowsCommitted;
+    private int pending;
+
+    public ProductHistoryBatchWriter(Connection connection, File source, int chunkSize, ProgressListener listener) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+        this.source = source.getAbsolutePath();
+        // a checkpoint only applies to the exact file it was written for
+        this.sourceSignature = source.length() + ":" + source.lastModified();
+        this.resumeFrom = readCheckpoint();
+        this.rowsCommitted = resumeFrom;
+        if (resumeFrom > 0) {
+            System.out.println("Resuming import of " + source.getName() + " after row " + resumeFrom);
+        }
+
+        this.previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        this.preparedStatement = connection.prepareStatement(INSERT_QUERY);
+        this.checkpointStatement = connection.prepareStatement(CHECKPOINT_QUERY);
+    }
+
+    public void add(int productId, String productName, int quantity, java.util.Date expirationDate, java.util.Date modifiedAt) throws SQLException {
+        touchedProducts.add(productId);
+        // rows up to the checkpoint were committed by a previous run
+        if (++rowsSeen <= resumeFrom) {
+            return;
+        }
+
+        preparedStatement.setInt(1, productId);
+        preparedStatement.setString(2, productName);
+        preparedStatement.setInt(3, quantity);
+        preparedStatement.setDate(4, new java.sql.Date(expirationDate.getTime()));
+        preparedStatement.setTimestamp(5, new Timestamp(modifiedAt.getTime()));
+        preparedStatement.addBatch();
+
+        if (++pending >= chunkSize) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Commits the last partial chunk and removes the checkpoint. Returns the number of rows
+     * inserted by this run.
+     */
+    public long finish() throws SQLException {
+        flushChunk();
+        // imported rows may be older than existing ones, which the incremental rollup trigger cannot fold correctly
+        HistoryRollup.backfill(touchedProducts);
+        // and they change the running history total that ProductService.ajouter starts from
+        HistoryRecorder.recomputeTotals(connection, touchedProducts);
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM import_checkpoint WHERE source = ?")) {
+            ps.setString(1, source);
+            ps.executeUpdate();
+        }
+        connection.commit();
+        return rowsCommitted - resumeFrom;
+    }
+
+    public long getRowsCommitted() {
+        return rowsCommitted;
+    }
+
+    private void flushChunk() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        try {
+            preparedStatement.executeBatch();
+            // same transaction as the rows, so the checkpoint never disagrees with the table
+            checkpointStatement.setString(1, source);
+            checkpointStatement.setString(2, sourceSignature);
+            checkpointStatement.setLong(3, rowsCommitted + pending);
+            checkpointStatement.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        rowsCommitted += pending;
+        pending = 0;
+
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        if (listener != null) {
+            listener.onProgress(rowsCommitted, seconds > 0 ? (rowsCommitted - resumeFrom) / seconds : 0);
+        }
+    }
+
+    private long readCheckpoint() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT signature, rows_committed FROM import_checkpoint WHERE source = ?")) {
+            ps.setString(1, source);
+            try (ResultSet res = ps.executeQuery()) {
+                if (res.next() && res.getString("signature").equals(sourceSignature)) {
+                    return res.getLong("rows_committed");
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (pending > 0) {
+                // rows added after the last commit are dropped; the checkpoint says where to resume
+                connection.rollback();
+                pending = 0;
+            }
+            preparedStatement.close();
+            checkpointStatement.close();
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+    }
+}
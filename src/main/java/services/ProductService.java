@@ -1,106 +1,116 @@
 package services;
 
 
-import javafx.application.Platform;
+import models.HistoryPoint;
 import models.Product;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import tray.notification.NotificationType;
-import tray.notification.TrayNotification;
 import utils.MyDataBase;
 
-import static services.NotificationService.showNotification;
 
 public class ProductService implements IService<Product> {
-    Connection cnx = MyDataBase.getInstance().getConnection();
+    private static final int MAX_ADJUST_ATTEMPTS = 5;
 
-    @Override
-    public void ajouter(Product product) {
-        String selectProductQuery = "SELECT * FROM product WHERE product_name = ? AND expiration_date = ?";
-        String updateProductQuery = "UPDATE product SET quantity = ? WHERE product_name = ? AND expiration_date = ?";
-        String insertProductQuery = "INSERT INTO product (product_name, quantity, expiration_date) VALUES (?, ?, ?)";
-
-        String selectProductIdQuery = "SELECT product_id FROM product WHERE product_name = ? AND expiration_date = ?";
-
-        String selectTotalQuantityQuery = "SELECT COALESCE(SUM(quantity), 0) AS total_quantity FROM product_history WHERE product_id = ? AND expiration_date <= ?";
-
-        String insertHistoryQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
-
-
-        try {
-            PreparedStatement selectProductStatement = cnx.prepareStatement(selectProductQuery);
-            selectProductStatement.setString(1, product.getProductName());
-            selectProductStatement.setDate(2, product.getExpirationDate());
-
-            ResultSet productResultSet = selectProductStatement.executeQuery();
+    private static final AtomicLong versionedUpdates = new AtomicLong();
+    private static final AtomicLong versionConflicts = new AtomicLong();
+    private static final AtomicLong mergeRetries = new AtomicLong();
+    private static final AtomicLong mergeFailures = new AtomicLong();
 
-            if (productResultSet.next()) {
-                int existingQuantity = productResultSet.getInt("quantity");
-                int newQuantity = existingQuantity + product.getQuantity();
-
-                PreparedStatement updateProductStatement = cnx.prepareStatement(updateProductQuery);
-                updateProductStatement.setInt(1, newQuantity);
-                updateProductStatement.setString(2, product.getProductName());
-                updateProductStatement.setDate(3, product.getExpirationDate());
-
-                updateProductStatement.executeUpdate();
-
-                int productId = productResultSet.getInt("product_id");
-
-                // Retrieve the total quantity from product_history
-                PreparedStatement selectTotalQuantityStatement = cnx.prepareStatement(selectTotalQuantityQuery);
-                selectTotalQuantityStatement.setInt(1, productId);
-                selectTotalQuantityStatement.setDate(2, product.getExpirationDate());
-
-                ResultSet totalQuantityResultSet = selectTotalQuantityStatement.executeQuery();
-
-                if (totalQuantityResultSet.next()) {
-                    int totalQuantity = totalQuantityResultSet.getInt("total_quantity") + product.getQuantity();
-
-                    // Insert a new record into the product_history table with the calculated total quantity
-                    PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery);
-                    insertHistoryStatement.setInt(1, productId);
-                    insertHistoryStatement.setString(2, product.getProductName());
-                    insertHistoryStatement.setInt(3, totalQuantity);
-                    insertHistoryStatement.setDate(4, product.getExpirationDate());
-                    insertHistoryStatement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+    private final ProductDictionary dictionary = ProductDictionary.getInstance();
+    private final StockAlertEngine alerts = StockAlertEngine.getInstance();
+    private final LotIndex lotIndex = LotIndex.getInstance();
 
+    @Override
+    public void ajouter(Product product) {
+        // Relies on the unique key on (product_name, expiration_date), see db/001_product_lot_unique_key.sql.
+        // LAST_INSERT_ID(product_id) makes the generated key point at the existing lot when it is updated.
+        // The history row of an intake is the lot's running total (SUM of its history) plus the new quantity;
+        // that total is kept in product.history_total (db/005) so no history rows are scanned.
+        // MySQL applies the assignments left to right and each one reads the columns already updated before it:
+        // last_history_quantity must stay before history_total so it reads the old total. Keep this order.
+        String upsertProductQuery = "INSERT INTO product (product_name, quantity, expiration_date, history_total, last_history_quantity) VALUES (?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE product_id = LAST_INSERT_ID(product_id), quantity = quantity + VALUES(quantity), "
+                + "last_history_quantity = history_total + VALUES(quantity), history_total = 2 * history_total + VALUES(quantity)";
+
+        // Copies the value computed by the upsert into the history row
+        String insertHistoryQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) "
+                + "SELECT product_id, product_name, last_history_quantity, expiration_date, ? FROM product WHERE product_id = ?";
+
+        InventoryEvents.ProductIntake event = new InventoryEvents.ProductIntake();
+        event.begin();
+        event.productName = product.getProductName();
+        event.quantity = product.getQuantity();
+        event.lots = 1;
+        // decided before the transaction, so its rows are either all in it or all submitted after it
+        boolean writeBehind = HistoryRecorder.writeBehind();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement upsertProductStatement = cnx.prepareStatement(upsertProductQuery, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery)) {
+                upsertProductStatement.setString(1, product.getProductName());
+                upsertProductStatement.setInt(2, product.getQuantity());
+                upsertProductStatement.setDate(3, product.getExpirationDate());
+                upsertProductStatement.setInt(4, product.getQuantity());
+                upsertProductStatement.setInt(5, product.getQuantity());
+                upsertProductStatement.executeUpdate();
+
+                int productId;
+                try (ResultSet generatedKeys = upsertProductStatement.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("No product id returned for " + product.getProductName());
+                    }
+                    productId = generatedKeys.getInt(1);
+                }
 
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                HistoryEvent history = null;
+                if (writeBehind) {
+                    history = HistoryRecorder.capture(cnx, productId, "last_history_quantity", now);
+                } else {
+                    insertHistoryStatement.setTimestamp(1, now);
+                    insertHistoryStatement.setInt(2, productId);
                     insertHistoryStatement.executeUpdate();
                 }
-            } else {
-                // Product doesn't exist, insert a new record
-                PreparedStatement insertProductStatement = cnx.prepareStatement(insertProductQuery, Statement.RETURN_GENERATED_KEYS);
-                insertProductStatement.setString(1, product.getProductName());
-                insertProductStatement.setInt(2, product.getQuantity());
-                insertProductStatement.setDate(3, product.getExpirationDate());
-
-                int affectedRows = insertProductStatement.executeUpdate();
-
-                if (affectedRows > 0) {
-                    ResultSet generatedKeys = insertProductStatement.getGeneratedKeys();
-                    if (generatedKeys.next()) {
-                        int productId = generatedKeys.getInt(1);
-
-                        // Insert a new record into the product_history table with the calculated total quantity
-                        PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery);
-                        insertHistoryStatement.setInt(1, productId);
-                        insertHistoryStatement.setString(2, product.getProductName());
-                        insertHistoryStatement.setInt(3, product.getQuantity());
-                        insertHistoryStatement.setDate(4, product.getExpirationDate());
-                        insertHistoryStatement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
-
-                        insertHistoryStatement.executeUpdate();
-                    }
+                cnx.commit();
+                if (history != null) {
+                    HistoryRecorder.submit(List.of(history));
+                }
+                product.setProductId(productId);
+                dictionary.put(productId, product.getProductName());
+                // an intake can bring a LOW lot back to OK, so the next drop alerts again; the level comes from
+                // the index, which holds every lot once warmed, so the transaction has no extra read for it
+                int newQuantity = lotIndex.addQuantity(productId, product.getProductName(), product.getExpirationDate().toLocalDate(), product.getQuantity());
+                if (newQuantity >= 0) {
+                    alerts.report(productId, product.getProductName(), newQuantity);
                 }
+                event.productId = productId;
+                event.succeeded = true;
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
             }
 
             System.out.println("Product added/updated successfully!");
         } catch (SQLException e) {
             System.out.println("Error adding/updating product: " + e.getMessage());
+            // callers (AddProduct through AsyncService) must not report the intake as saved
+            throw new DataAccessException("Product '" + product.getProductName() + "' not saved", e);
+        } finally {
+            event.commit();
         }
     }
 
@@ -108,69 +118,153 @@ public class ProductService implements IService<Product> {
 
 
 
+    // Compare-and-set on the version the caller read: the update only applies if nobody changed the row since.
+    // Throws StaleProductException on conflict; reload the product and try again.
     public void modifier(Product product) {
-        String updateProductQuery = "UPDATE `product` SET `quantity`=?, `expiration_date`=?, `modified_at`=?, `version`=? WHERE product_id=?";
-        String insertHistoryQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
-
+        InventoryEvents.StockEdit event = new InventoryEvents.StockEdit();
+        event.begin();
+        event.productId = product.getProductId();
+        event.quantity = product.getQuantity();
+        event.lots = 1;
         try {
-            // Update the quantity in the product table
-            PreparedStatement updateProductStatement = cnx.prepareStatement(updateProductQuery);
-            updateProductStatement.setInt(1, product.getQuantity());
-            updateProductStatement.setDate(2, product.getExpirationDate());
-            updateProductStatement.setTimestamp(3, new Timestamp(System.currentTimeMillis())); // Set the current timestamp
-            updateProductStatement.setInt(4, product.getVersion() + 1); // Increment the version
-            updateProductStatement.setInt(5, product.getProductId());
+            update(product, event);
+        } finally {
+            event.commit();
+        }
+    }
 
-            int rowCount = updateProductStatement.executeUpdate();
+    private void update(Product product, InventoryEvents.StockEdit event) {
+        // history_total keeps the running balance of the history rows (db/005), the new row adds the new quantity
+        String updateProductQuery = "UPDATE `product` SET `quantity`=?, `expiration_date`=?, `modified_at`=?, `version`=`version`+1, `history_total`=`history_total`+? WHERE product_id=? AND `version`=?";
+        String insertHistoryQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
 
-            if (rowCount > 0) {
-                System.out.println("Product with id " + product.getProductId() + " has been updated successfully.");
+        versionedUpdates.incrementAndGet();
+        boolean writeBehind = HistoryRecorder.writeBehind();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement updateProductStatement = cnx.prepareStatement(updateProductQuery);
+                 PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery)) {
+                // Update the quantity in the product table
+                updateProductStatement.setInt(1, product.getQuantity());
+                updateProductStatement.setDate(2, product.getExpirationDate());
+                updateProductStatement.setTimestamp(3, new Timestamp(System.currentTimeMillis())); // Set the current timestamp
+                updateProductStatement.setInt(4, product.getQuantity());
+                updateProductStatement.setInt(5, product.getProductId());
+                updateProductStatement.setInt(6, product.getVersion());
+
+                int rowCount = updateProductStatement.executeUpdate();
+
+                if (rowCount == 0) {
+                    cnx.rollback();
+                    if (productExists(cnx, product.getProductId())) {
+                        versionConflicts.incrementAndGet();
+                        event.conflicts = 1;
+                        throw new StaleProductException(product.getProductId(), "Product '" + product.getProductName()
+                                + "' was modified on another terminal. Reload it and try again.");
+                    }
+                    System.out.println("No product found with id " + product.getProductId() + ". Nothing updated.");
+                    return;
+                }
 
                 // Insert a new record into the product_history table to capture the modified quantity
-                PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery);
-                insertHistoryStatement.setInt(1, product.getProductId());
-                insertHistoryStatement.setString(2, product.getProductName());
-                insertHistoryStatement.setInt(3, product.getQuantity());
-                insertHistoryStatement.setDate(4, product.getExpirationDate());
-                insertHistoryStatement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
-
-                insertHistoryStatement.executeUpdate();
-            } else {
-                System.out.println("No product found with id " + product.getProductId() + ". Nothing updated.");
+                HistoryEvent history = new HistoryEvent(product.getProductId(), product.getProductName(), product.getQuantity(),
+                        product.getExpirationDate(), new Timestamp(System.currentTimeMillis()));
+                if (!writeBehind) {
+                    insertHistoryStatement.setInt(1, history.productId());
+                    insertHistoryStatement.setString(2, history.productName());
+                    insertHistoryStatement.setInt(3, history.quantity());
+                    insertHistoryStatement.setDate(4, history.expirationDate());
+                    insertHistoryStatement.setTimestamp(5, history.modifiedAt());
+                    insertHistoryStatement.executeUpdate();
+                }
+
+                cnx.commit();
+                if (writeBehind) {
+                    HistoryRecorder.submit(List.of(history));
+                }
+                product.setVersion(product.getVersion() + 1);
+                // the update does not touch product_name, so the dictionary is left as it is and the alert
+                // uses the saved name, not the one the caller may have edited
+                lotIndex.updateLot(product.getProductId(), product.getExpirationDate().toLocalDate(), product.getQuantity());
+                alerts.report(product.getProductId(), dictionary.getName(product.getProductId()), product.getQuantity());
+                event.applied = 1;
+                System.out.println("Product with id " + product.getProductId() + " has been updated successfully.");
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             System.out.println("Error updating product with id " + product.getProductId() + ": " + e.getMessage());
         }
 
-        if (product.getQuantity() < 50) {
-            showNotification("Low Quantity Alert", "Product '" + product.getProductName() + "' has a low quantity: " + product.getQuantity(), NotificationType.WARNING);
+    }
+
+    // Merge policy for quantity changes: a delta (e.g. -3 for a basket line) does not depend on what
+    // other terminals did in between, so on a version conflict it is simply re-applied to a fresh read.
+    public Product adjustQuantity(int productId, int delta) {
+        for (int attempt = 1; attempt <= MAX_ADJUST_ATTEMPTS; attempt++) {
+            Product current = getOneById(productId);
+            if (current == null) {
+                System.out.println("No product found with id " + productId + ". Nothing updated.");
+                return null;
+            }
+            current.setQuantity(current.getQuantity() + delta);
+            try {
+                modifier(current);
+                return current;
+            } catch (StaleProductException e) {
+                mergeRetries.incrementAndGet();
+                try {
+                    // short randomized backoff so competing terminals do not collide again
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(5, 20L * attempt));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
         }
+        mergeFailures.incrementAndGet();
+        throw new StaleProductException(productId, "Could not update product " + productId + ": too many concurrent modifications.");
+    }
 
+    private boolean productExists(Connection cnx, int productId) throws SQLException {
+        try (PreparedStatement ps = cnx.prepareStatement("SELECT 1 FROM product WHERE product_id = ?")) {
+            ps.setInt(1, productId);
+            try (ResultSet res = ps.executeQuery()) {
+                return res.next();
+            }
+        }
     }
 
-    private void showNotification(String title, String message, NotificationType type) {
-        Platform.runLater(() -> {
-            TrayNotification tray = new TrayNotification();
-            tray.setTitle(title);
-            tray.setMessage(message);
-            tray.setNotificationType(type);
-            tray.showAndDismiss(javafx.util.Duration.seconds(5));
-        });
+    public static ConcurrencyStats getConcurrencyStats() {
+        return new ConcurrencyStats(versionedUpdates.get(), versionConflicts.get(), mergeRetries.get(), mergeFailures.get());
     }
 
+    /**
+     * Optimistic locking counters, shared by every ProductService instance.
+     */
+    public record ConcurrencyStats(long updates, long conflicts, long retries, long failures) {
+        public double conflictRate() {
+            return updates == 0 ? 0 : (double) conflicts / updates;
+        }
+    }
+
+
     @Override
     public void supprimer(int id) {
 
         String req = "DELETE FROM product WHERE  product_id = ?";
 
-        try {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             // Using PreparedStatement to prevent SQL injection
-            PreparedStatement ps = cnx.prepareStatement(req);
             ps.setInt(1, id);
 
             int rowCount = ps.executeUpdate();
 
             if (rowCount > 0) {
+                dictionary.remove(id);
+                lotIndex.remove(id);
                 System.out.println("product with id " + id + " has been deleted successfully.");
             } else {
                 System.out.println("No product found with id " + id + ". Nothing deleted.");
@@ -182,11 +276,258 @@ public class ProductService implements IService<Product> {
 
     }
 
+    // Intake of many lots in one transaction. Entries for the same lot (name + expiration date) are merged
+    // into one intake first, so each lot gets one upsert and one history row. Per chunk: the batched
+    // upsert (one multi-row INSERT), the history rows (one INSERT ... SELECT) and the ids of the lots.
+    @Override
+    public BulkResult ajouterAll(List<Product> products) {
+        InventoryEvents.ProductIntake event = new InventoryEvents.ProductIntake();
+        event.begin();
+        long start = System.currentTimeMillis();
+        // same upsert as ajouter: the order of the assignments matters
+        String upsertProductQuery = "INSERT INTO product (product_name, quantity, expiration_date, history_total, last_history_quantity) VALUES (?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), "
+                + "last_history_quantity = history_total + VALUES(quantity), history_total = 2 * history_total + VALUES(quantity)";
+
+        Map<String, Product> lots = new LinkedHashMap<>();
+        for (Product product : products) {
+            lots.merge(lotKey(product.getProductName(), product.getExpirationDate()),
+                    new Product(product.getProductName(), product.getQuantity(), product.getExpirationDate()),
+                    (lot, more) -> {
+                        lot.setQuantity(lot.getQuantity() + more.getQuantity());
+                        return lot;
+                    });
+        }
+        List<Product> merged = new ArrayList<>(lots.values());
+        Map<String, Integer> idsByLot = new HashMap<>();
+        Map<Integer, Integer> quantitiesById = new HashMap<>();
+        List<HistoryEvent> history = new ArrayList<>();
+
+        boolean writeBehind = HistoryRecorder.writeBehind();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement upsertProductStatement = cnx.prepareStatement(upsertProductQuery)) {
+                BatchSupport.executeInChunks(upsertProductStatement, merged, (ps, lot) -> {
+                    ps.setString(1, lot.getProductName());
+                    ps.setInt(2, lot.getQuantity());
+                    ps.setDate(3, lot.getExpirationDate());
+                    ps.setInt(4, lot.getQuantity());
+                    ps.setInt(5, lot.getQuantity());
+                });
+
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                for (int from = 0; from < merged.size(); from += BatchSupport.CHUNK_SIZE) {
+                    List<Product> chunk = merged.subList(from, Math.min(from + BatchSupport.CHUNK_SIZE, merged.size()));
+                    String lotList = String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)"));
+
+                    // Copies the values computed by the upserts into the history rows
+                    if (!writeBehind) {
+                        try (PreparedStatement insertHistoryStatement = cnx.prepareStatement(
+                                "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) "
+                                        + "SELECT product_id, product_name, last_history_quantity, expiration_date, ? FROM product "
+                                        + "WHERE (product_name, expiration_date) IN (" + lotList + ")")) {
+                            insertHistoryStatement.setTimestamp(1, now);
+                            bindLots(insertHistoryStatement, 2, chunk);
+                            insertHistoryStatement.executeUpdate();
+                        }
+                    }
+
+                    try (PreparedStatement idStatement = cnx.prepareStatement(
+                            "SELECT product_id, product_name, expiration_date, quantity, last_history_quantity FROM product WHERE (product_name, expiration_date) IN (" + lotList + ")")) {
+                        bindLots(idStatement, 1, chunk);
+                        ResultSet res = idStatement.executeQuery();
+                        while (res.next()) {
+                            idsByLot.put(lotKey(res.getString("product_name"), res.getDate("expiration_date")), res.getInt("product_id"));
+                            quantitiesById.put(res.getInt("product_id"), res.getInt("quantity"));
+                            if (writeBehind) {
+                                history.add(new HistoryEvent(res.getInt("product_id"), res.getString("product_name"),
+                                        res.getInt("last_history_quantity"), res.getDate("expiration_date"), now));
+                            }
+                        }
+                    }
+                }
+
+                cnx.commit();
+                HistoryRecorder.submit(history);
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error adding " + products.size() + " products: " + e.getMessage());
+            event.lots = merged.size();
+            event.commit();
+            return BulkResult.failed(new int[products.size()], e.getMessage(), System.currentTimeMillis() - start);
+        }
+
+        List<BulkResult.Item> items = new ArrayList<>(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            Integer productId = idsByLot.get(lotKey(product.getProductName(), product.getExpirationDate()));
+            if (productId == null) {
+                items.add(new BulkResult.Item(i, 0, BulkResult.Status.FAILED, "Lot not found after insert"));
+                continue;
+            }
+            product.setProductId(productId);
+            dictionary.put(productId, product.getProductName());
+            lotIndex.addQuantity(productId, product.getProductName(), product.getExpirationDate().toLocalDate(), product.getQuantity());
+            items.add(new BulkResult.Item(i, productId, BulkResult.Status.APPLIED, null));
+        }
+        // one report per lot, with the quantity after the whole intake
+        for (Product lot : merged) {
+            Integer productId = idsByLot.get(lotKey(lot.getProductName(), lot.getExpirationDate()));
+            if (productId != null) {
+                alerts.report(productId, lot.getProductName(), quantitiesById.get(productId));
+            }
+        }
+        BulkResult result = new BulkResult(items, System.currentTimeMillis() - start);
+        System.out.println("Products added/updated: " + result);
+        event.lots = merged.size();
+        event.quantity = merged.stream().mapToInt(Product::getQuantity).sum();
+        event.succeeded = true;
+        event.commit();
+        return result;
+    }
+
+    // Versioned update of many lots in one transaction, same compare-and-set as modifier. Lots whose version
+    // changed are reported as CONFLICT and left out, the others are applied and get their history row.
+    @Override
+    public BulkResult modifierAll(List<Product> products) {
+        InventoryEvents.StockEdit event = new InventoryEvents.StockEdit();
+        event.begin();
+        event.lots = products.size();
+        long start = System.currentTimeMillis();
+        String updateProductQuery = "UPDATE `product` SET `quantity`=?, `expiration_date`=?, `modified_at`=?, `version`=`version`+1, `history_total`=`history_total`+? WHERE product_id=? AND `version`=?";
+        String insertHistoryQuery = "INSERT INTO product_history (product_id, product_name, quantity, expiration_date, modified_at) VALUES (?, ?, ?, ?, ?)";
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int[] counts;
+        Set<Integer> existing = Collections.emptySet();
+        versionedUpdates.addAndGet(products.size());
+        boolean writeBehind = HistoryRecorder.writeBehind();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement updateProductStatement = cnx.prepareStatement(updateProductQuery);
+                 PreparedStatement insertHistoryStatement = cnx.prepareStatement(insertHistoryQuery)) {
+                counts = BatchSupport.executeInChunks(updateProductStatement, products, (ps, product) -> {
+                    ps.setInt(1, product.getQuantity());
+                    ps.setDate(2, product.getExpirationDate());
+                    ps.setTimestamp(3, now);
+                    ps.setInt(4, product.getQuantity());
+                    ps.setInt(5, product.getProductId());
+                    ps.setInt(6, product.getVersion());
+                });
+
+                List<Product> updated = new ArrayList<>();
+                List<Integer> notUpdated = new ArrayList<>();
+                for (int i = 0; i < products.size(); i++) {
+                    if (BatchSupport.applied(counts[i])) {
+                        updated.add(products.get(i));
+                    } else {
+                        notUpdated.add(products.get(i).getProductId());
+                    }
+                }
+                // One query tells the conflicts (row still there) from the deleted lots
+                if (!notUpdated.isEmpty()) {
+                    existing = existingProductIds(cnx, notUpdated);
+                }
+
+                if (!updated.isEmpty() && !writeBehind) {
+                    BatchSupport.executeInChunks(insertHistoryStatement, updated, (ps, product) -> {
+                        ps.setInt(1, product.getProductId());
+                        ps.setString(2, product.getProductName());
+                        ps.setInt(3, product.getQuantity());
+                        ps.setDate(4, product.getExpirationDate());
+                        ps.setTimestamp(5, now);
+                    });
+                }
+
+                cnx.commit();
+                if (writeBehind) {
+                    HistoryRecorder.submit(updated.stream()
+                            .map(product -> new HistoryEvent(product.getProductId(), product.getProductName(), product.getQuantity(), product.getExpirationDate(), now))
+                            .toList());
+                }
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error updating " + products.size() + " products: " + e.getMessage());
+            event.commit();
+            return BulkResult.failed(products.stream().mapToInt(Product::getProductId).toArray(), e.getMessage(), System.currentTimeMillis() - start);
+        }
+
+        List<BulkResult.Item> items = new ArrayList<>(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (BatchSupport.applied(counts[i])) {
+                product.setVersion(product.getVersion() + 1);
+                // saved name, as in modifier
+                lotIndex.updateLot(product.getProductId(), product.getExpirationDate().toLocalDate(), product.getQuantity());
+                alerts.report(product.getProductId(), dictionary.getName(product.getProductId()), product.getQuantity());
+                items.add(new BulkResult.Item(i, product.getProductId(), BulkResult.Status.APPLIED, null));
+            } else if (existing.contains(product.getProductId())) {
+                versionConflicts.incrementAndGet();
+                items.add(new BulkResult.Item(i, product.getProductId(), BulkResult.Status.CONFLICT,
+                        "Product '" + product.getProductName() + "' was modified on another terminal"));
+            } else {
+                items.add(new BulkResult.Item(i, product.getProductId(), BulkResult.Status.NOT_FOUND, null));
+            }
+        }
+        BulkResult result = new BulkResult(items, System.currentTimeMillis() - start);
+        System.out.println("Products updated: " + result);
+        event.applied = result.count(BulkResult.Status.APPLIED);
+        event.conflicts = result.count(BulkResult.Status.CONFLICT);
+        event.commit();
+        return result;
+    }
+
+    @Override
+    public BulkResult supprimerAll(List<Integer> ids) {
+        BulkResult result = BatchSupport.executeAll("DELETE FROM product WHERE product_id = ?", ids, Integer::intValue,
+                (ps, id) -> ps.setInt(1, id), "deleting products");
+        for (BulkResult.Item item : result.getItems()) {
+            if (item.applied()) {
+                dictionary.remove(item.id());
+                lotIndex.remove(item.id());
+            }
+        }
+        System.out.println("Products deleted: " + result);
+        return result;
+    }
+
+    // A lot is identified by name and expiration date (unique key, db/001); names compare case-insensitively like the column
+    private static String lotKey(String productName, java.sql.Date expirationDate) {
+        return productName.toLowerCase(Locale.ROOT) + '|' + expirationDate;
+    }
+
+    private static void bindLots(PreparedStatement ps, int firstIndex, List<Product> lots) throws SQLException {
+        int index = firstIndex;
+        for (Product lot : lots) {
+            ps.setString(index++, lot.getProductName());
+            ps.setDate(index++, lot.getExpirationDate());
+        }
+    }
+
+    private Set<Integer> existingProductIds(Connection cnx, List<Integer> productIds) throws SQLException {
+        Set<Integer> existing = new HashSet<>();
+        String ids = productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        try (Statement st = cnx.createStatement();
+             ResultSet res = st.executeQuery("SELECT product_id FROM product WHERE product_id IN (" + ids + ")")) {
+            while (res.next()) {
+                existing.add(res.getInt(1));
+            }
+        }
+        return existing;
+    }
+
     @Override
     public Product getOneById(int id) {
-        String req = "SELECT `product_id`, `product_name`, `quantity`, `expiration_date` FROM `product` WHERE product_id=?";
+        String req = "SELECT `product_id`, `product_name`, `quantity`, `expiration_date`, `version` FROM `product` WHERE product_id=?";
 
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, id);
             // Set the parameter value
             ResultSet res = ps.executeQuery();
@@ -196,7 +537,9 @@ public class ProductService implements IService<Product> {
                 int quantity = res.getInt("quantity");
                 java.sql.Date expirationDate = res.getDate("expiration_date");
 
-                return new Product(id, product_name, quantity, expirationDate);
+                Product product = new Product(id, product_name, quantity, expirationDate);
+                product.setVersion(res.getInt("version"));
+                return product;
             }
         } catch (SQLException e) {
             System.err.println("Error fetching product by id: " + e.getMessage());
@@ -207,83 +550,114 @@ public class ProductService implements IService<Product> {
 
     @Override
     public List<Product> getAll() {
-        List<Product> ProductsList = new ArrayList<>();
+        try (Stream<Product> products = streamAll()) {
+            return products.collect(Collectors.toCollection(ArrayList::new));
+        } catch (DataAccessException e) {
+            System.out.println(e.getMessage());
+            return new ArrayList<>();
+        }
+    }
 
-        String req = "SELECT * FROM Product WHERE 1";
-        try {
-            Statement st = cnx.createStatement();
-            ResultSet res = st.executeQuery(req);
+    @Override
+    public Stream<Product> streamAll() {
+        return RowStreams.stream("SELECT `product_id`, `product_name`, `quantity`, `expiration_date`, `version` FROM `product`", ProductService::mapProduct);
+    }
 
-            while (res.next()) {
-                int product_id = res.getInt("product_id");
-                String product_name = res.getString("product_name");
-                int quantity = res.getInt("quantity");
-                java.sql.Date expirationDate = res.getDate("expiration_date");
-                Product r = new Product(product_id, product_name, quantity, expirationDate);
-                ProductsList.add(r);
+
+    // Keyset pagination in (expiration_date, product_id) order: the page after the given row, or the first page when afterExpiration is null.
+    // Cost does not depend on how deep the page is, unlike LIMIT/OFFSET.
+    public List<Product> getProductPage(java.sql.Date afterExpiration, int afterId, int limit) {
+        String req = afterExpiration == null
+                ? "SELECT `product_id`, `product_name`, `quantity`, `expiration_date`, `version` FROM `product` ORDER BY expiration_date, product_id LIMIT ?"
+                : "SELECT `product_id`, `product_name`, `quantity`, `expiration_date`, `version` FROM `product` "
+                + "WHERE expiration_date > ? OR (expiration_date = ? AND product_id > ?) ORDER BY expiration_date, product_id LIMIT ?";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            if (afterExpiration == null) {
+                ps.setInt(1, limit);
+            } else {
+                ps.setDate(1, afterExpiration);
+                ps.setDate(2, afterExpiration);
+                ps.setInt(3, afterId);
+                ps.setInt(4, limit);
             }
+            return readProducts(ps.executeQuery());
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Error fetching product page: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    private List<Product> readProducts(ResultSet res) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        while (res.next()) {
+            products.add(mapProduct(res));
         }
-        return ProductsList;
+        return products;
+    }
+
+    private static Product mapProduct(ResultSet res) throws SQLException {
+        Product product = new Product(res.getInt("product_id"), res.getString("product_name"),
+                res.getInt("quantity"), res.getDate("expiration_date"));
+        product.setVersion(res.getInt("version"));
+        return product;
     }
 
 
+    // Served from the in-memory dictionary; only the first call (or a call after an invalidation) queries the database
     public List<String> getAllProductNames() {
-        List<String> productNames = new ArrayList<>();
+        return new ArrayList<>(dictionary.getAllNames());
+    }
 
-        String req = "SELECT `product_name` FROM `product` WHERE 1";
-        try {
-            PreparedStatement ps = cnx.prepareStatement(req);
-            ResultSet res = ps.executeQuery();
 
-            while (res.next()) {
-                String productName = res.getString("product_name");
-                productNames.add(productName);
-            }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+
+    // One query for the whole chart: history grouped by MySQL into buckets of the requested resolution.
+    // Both dates are inclusive. The number of points depends on the range and resolution, not on how many rows there are.
+    // Day and week buckets are read from the daily rollup (product_history_daily), hours from the raw rows.
+    public List<HistoryPoint> getProductHistorySeries(String productName, LocalDate startDate, LocalDate endDate, TimeBucket resolution) {
+        String query;
+        if (resolution.rollupExpression() != null) {
+            query = "SELECT " + resolution.rollupExpression() + " AS bucket, MIN(min_qty) AS min_quantity, MAX(max_qty) AS max_quantity, "
+                    + "SUBSTRING_INDEX(GROUP_CONCAT(closing_qty ORDER BY last_modified_at DESC), ',', 1) AS last_quantity, SUM(samples) AS samples "
+                    + "FROM product_history_daily WHERE product_name = ? AND day >= ? AND day < ? "
+                    + "GROUP BY bucket ORDER BY bucket";
+        } else {
+            query = "SELECT " + resolution.sqlExpression() + " AS bucket, MIN(quantity) AS min_quantity, MAX(quantity) AS max_quantity, "
+                    + "SUBSTRING_INDEX(GROUP_CONCAT(quantity ORDER BY modified_at DESC), ',', 1) AS last_quantity, COUNT(*) AS samples "
+                    + "FROM product_history WHERE product_name = ? AND modified_at >= ? AND modified_at < ? "
+                    + "GROUP BY bucket ORDER BY bucket";
         }
-        return productNames;
-    }
+        List<HistoryPoint> points = new ArrayList<>();
 
-    // New method to get product ID by name
-    public int getProductIdByName(String productName) {
-        String req = "SELECT `product_id` FROM `product` WHERE `product_name`=?";
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
             ps.setString(1, productName);
-            ResultSet res = ps.executeQuery();
+            ps.setTimestamp(2, Timestamp.valueOf(startDate.atStartOfDay()));
+            ps.setTimestamp(3, Timestamp.valueOf(endDate.plusDays(1).atStartOfDay()));
 
-            if (res.next()) {
-                return res.getInt("product_id");
-            }
-        } catch (SQLException e) {
-            System.out.println("Error fetching product ID by name: " + e.getMessage());
-        }
-        return -1; // Product not found, return a default value or handle it accordingly
-    }
+            ResultSet resultSet = ps.executeQuery();
 
-    public String getProductNameById(int productId) {
-        String req = "SELECT `product_name` FROM `product` WHERE product_id=?";
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
-            ps.setInt(1, productId);
-            ResultSet res = ps.executeQuery();
-            if (res.next()) {
-                return res.getString("product_name");
+            while (resultSet.next()) {
+                points.add(new HistoryPoint(
+                        resultSet.getTimestamp("bucket").toLocalDateTime(),
+                        resultSet.getInt("min_quantity"),
+                        resultSet.getInt("max_quantity"),
+                        Integer.parseInt(resultSet.getString("last_quantity")),
+                        resultSet.getInt("samples")));
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching product name by id: " + e.getMessage());
+            System.out.println("Error fetching product history series: " + e.getMessage());
         }
-        return null; // Product name not found
-    }
-
 
+        return points;
+    }
 
     public List<Integer> getProductHistoryDataForChart(String productName, Date startDate, Date endDate) {
         String query = "SELECT quantity FROM product_history WHERE product_name = ? AND modified_at BETWEEN ? AND ?";
         List<Integer> quantities = new ArrayList<>();
 
-        try (PreparedStatement ps = cnx.prepareStatement(query)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
             ps.setString(1, productName);
             ps.setDate(2, startDate);
             ps.setDate(3, endDate);
@@ -305,7 +679,8 @@ public class ProductService implements IService<Product> {
         String query = "SELECT modified_at FROM product_history WHERE product_name = ? AND modified_at BETWEEN ? AND ?";
         List<LocalDate> modifiedDates = new ArrayList<>();
 
-        try (PreparedStatement ps = cnx.prepareStatement(query)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
             ps.setString(1, productName);
             ps.setDate(2, startDate);
             ps.setDate(3, endDate);
@@ -324,8 +699,9 @@ public class ProductService implements IService<Product> {
     }
 
     public Product read(int id) throws SQLException {
-        String req = "SELECT `product_id`, `product_name`, `quantity`, `expiration_date` FROM `product` WHERE product_id=?";
-        try (PreparedStatement ps = cnx.prepareStatement(req)) {
+        String req = "SELECT `product_id`, `product_name`, `quantity`, `expiration_date`, `version` FROM `product` WHERE product_id=?";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
             ps.setInt(1, id);
             ResultSet res = ps.executeQuery();
             if (res.next()) {
@@ -334,7 +710,9 @@ public class ProductService implements IService<Product> {
                 int quantity = res.getInt("quantity");
                 java.sql.Date expirationDate = res.getDate("expiration_date");
 
-                return new Product(productId, productName, quantity, expirationDate);
+                Product product = new Product(productId, productName, quantity, expirationDate);
+                product.setVersion(res.getInt("version"));
+                return product;
             }
         } catch (SQLException e) {
             System.err.println("Error fetching product by id: " + e.getMessage());
@@ -401,7 +779,8 @@ public class ProductService implements IService<Product> {
         String query = "SELECT quantity FROM product WHERE product_name = ? AND modified_at BETWEEN ? AND ?";
         List<Integer> quantities = new ArrayList<>();
 
-        try (PreparedStatement ps = cnx.prepareStatement(query)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
             ps.setString(1, productName);
             ps.setTimestamp(2, Timestamp.valueOf(startDate.atStartOfDay()));
             ps.setTimestamp(3, Timestamp.valueOf(endDate.plusDays(1).atStartOfDay())); // Adding 1 day to include the entire endDate
@@ -428,7 +807,8 @@ public class ProductService implements IService<Product> {
     // Helper method to get the current quantity of a product
     private int getProductQuantity(int productId) throws SQLException {
         String selectQuantityQuery = "SELECT quantity FROM product WHERE product_id = ?";
-        try (PreparedStatement ps = cnx.prepareStatement(selectQuantityQuery)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(selectQuantityQuery)) {
             ps.setInt(1, productId);
             ResultSet resultSet = ps.executeQuery();
             if (resultSet.next()) {
@@ -446,7 +826,8 @@ public class ProductService implements IService<Product> {
 
         List<Integer> quantities = new ArrayList<>();
 
-        try (PreparedStatement ps = cnx.prepareStatement(query)) {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(query)) {
             ps.setString(1, productName);
 
             ResultSet resultSet = ps.executeQuery();
@@ -0,0 +1,145 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Single-pass reads over a forward-only, read-only ResultSet, so whole-table passes (reports,
+ * exports) hold one row at a time instead of the whole table.
+ *
+ * The connection, statement and result set are released when the stream is closed or has been
+ * read to the end, whichever comes first. Use try-with-resources:
+ * <pre>
+ *     try (Stream&lt;Line&gt; lines = lineService.streamAll()) {
+ *         lines.filter(...).forEach(...);
+ *     }
+ * </pre>
+ * By default rows are streamed one by one (fetch size Integer.MIN_VALUE, Connector/J's streaming
+ * mode). The connection cannot run other statements until the stream is closed, so do not call
+ * other services from inside the pipeline with the same connection. -Ddb.streamFetchSize=n with
+ * useCursorFetch=true in db.url switches to server-side cursors fetching n rows at a time.
+ */
+public final class RowStreams {
+
+    // also used by the other streaming reads (ExcelExporter, HistoryRollup)
+    static final int FETCH_SIZE = Integer.getInteger("db.streamFetchSize", Integer.MIN_VALUE);
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet res) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ParameterBinder {
+        ParameterBinder NONE = ps -> {
+        };
+
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    private RowStreams() {
+    }
+
+    public static <T> Stream<T> stream(String query, ParameterBinder binder, RowMapper<T> mapper) {
+        Cursor<T> cursor = Cursor.open(query, binder, mapper);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    public static <T> Stream<T> stream(String query, RowMapper<T> mapper) {
+        return stream(query, ParameterBinder.NONE, mapper);
+    }
+
+    // Callback form of stream(): hands every row to the consumer and returns the number of rows
+    public static <T> long forEach(String query, ParameterBinder binder, RowMapper<T> mapper, Consumer<? super T> consumer) {
+        long[] rows = new long[1];
+        try (Stream<T> stream = stream(query, binder, mapper)) {
+            stream.forEach(row -> {
+                consumer.accept(row);
+                rows[0]++;
+            });
+        }
+        return rows[0];
+    }
+
+    private static final class Cursor<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+        private final Connection cnx;
+        private final PreparedStatement ps;
+        private final ResultSet res;
+        private final RowMapper<T> mapper;
+        private boolean closed;
+
+        private Cursor(Connection cnx, PreparedStatement ps, ResultSet res, RowMapper<T> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+            this.cnx = cnx;
+            this.ps = ps;
+            this.res = res;
+            this.mapper = mapper;
+        }
+
+        static <T> Cursor<T> open(String query, ParameterBinder binder, RowMapper<T> mapper) {
+            Connection cnx = null;
+            PreparedStatement ps = null;
+            try {
+                cnx = MyDataBase.getInstance().getConnection();
+                ps = cnx.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(FETCH_SIZE);
+                binder.bind(ps);
+                return new Cursor<>(cnx, ps, ps.executeQuery(), mapper);
+            } catch (SQLException e) {
+                closeQuietly(ps);
+                closeQuietly(cnx);
+                throw new DataAccessException("Error opening query", e);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!res.next()) {
+                    close();
+                    return false;
+                }
+                action.accept(mapper.map(res));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new DataAccessException("Error reading rows", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // closing the result set drains what is left of a streamed result
+            closeQuietly(res);
+            closeQuietly(ps);
+            closeQuietly(cnx);
+        }
+
+        private static void closeQuietly(AutoCloseable resource) {
+            if (resource == null) {
+                return;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.out.println("Error closing streamed query: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package services;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs service calls off the JavaFX application thread.
+ *
+ * Tasks run on virtual threads when the JVM has them (Java 21+), on a fixed pool of daemon
+ * threads otherwise. At most service.async.maxConcurrency tasks run at once (by default the
+ * size of the connection pool, more would only wait for a connection) and at most
+ * service.async.queueSize more may wait; anything beyond that is rejected instead of piling up.
+ */
+public final class ServiceExecutor {
+
+    private static final int MAX_CONCURRENCY = Integer.getInteger("service.async.maxConcurrency", Integer.getInteger("db.pool.max", 10));
+    private static final int QUEUE_SIZE = Integer.getInteger("service.async.queueSize", 200);
+
+    // Callbacks given to thenAcceptAsync(..., FX) etc. run on the JavaFX application thread
+    public static final Executor FX = Platform::runLater;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final Semaphore RUNNING = new Semaphore(MAX_CONCURRENCY);
+    private static final Semaphore ADMITTED = new Semaphore(MAX_CONCURRENCY + QUEUE_SIZE);
+
+    private ServiceExecutor() {
+    }
+
+    /**
+     * Runs the task in the background. Cancelling the returned future stops a task that has not
+     * started yet and interrupts one that is running.
+     */
+    public static <R> CompletableFuture<R> supply(Callable<R> task) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        if (!ADMITTED.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException("Too many pending database requests"));
+            return result;
+        }
+
+        Future<?> running;
+        try {
+            running = EXECUTOR.submit(() -> {
+                try {
+                    if (result.isDone()) {
+                        return; // cancelled while queued
+                    }
+                    RUNNING.acquire();
+                    try {
+                        if (!result.isDone()) {
+                            result.complete(task.call());
+                        }
+                    } finally {
+                        RUNNING.release();
+                    }
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(new CancellationException("Interrupted"));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    ADMITTED.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ADMITTED.release();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public static CompletableFuture<Void> run(ThrowingRunnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Hands the outcome of the future to one of the callbacks, on the JavaFX application thread.
+     * Nothing is called when the future was cancelled.
+     */
+    public static <R> void onFx(CompletableFuture<R> future, Consumer<? super R> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            FX.execute(() -> {
+                if (error == null) {
+                    onSuccess.accept(value);
+                } else {
+                    onError.accept(unwrap(error));
+                }
+            });
+        });
+    }
+
+    // The exception thrown by the task, without the CompletionException wrappers added along a future chain
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    public static int getActiveCount() {
+        return MAX_CONCURRENCY - RUNNING.availablePermits();
+    }
+
+    public static int getPendingCount() {
+        return MAX_CONCURRENCY + QUEUE_SIZE - ADMITTED.availablePermits();
+    }
+
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    private static ExecutorService createExecutor() {
+        // The project targets Java 17, so virtual threads are looked up reflectively
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(runnable, "service-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(MAX_CONCURRENCY, factory);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package services;
+
+import utils.TokenBucket;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound SMS queue. enqueue() returns as soon as the message is written to the journal; a small
+ * pool of workers sends it through the SmsTransport.
+ *
+ * - Durable: every message is appended to a journal file (sms.journal, default sms-outbox.journal)
+ *   before enqueue returns, and marked done or dead once handled. Messages still open in the
+ *   journal are queued again when the application starts.
+ * - Rate limited: workers share a token bucket (sms.ratePerSecond, sms.burst).
+ * - Retried: retriable failures are sent again after an exponential backoff with jitter, up to
+ *   sms.maxAttempts; then, like non-retriable failures, the message is marked dead.
+ *
+ * The transport is Twilio unless -Dsms.transport=stub.
+ */
+public class SmsQueue {
+
+    private static final int WORKERS = Integer.getInteger("sms.workers", 2);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("sms.maxAttempts", 5);
+    private static final long BASE_BACKOFF_MS = Long.getLong("sms.backoffMs", 1000L);
+    private static final long MAX_BACKOFF_MS = 60_000L;
+    // the journal is rewritten with only the open messages once this many entries are closed
+    private static final int COMPACT_AFTER = 1000;
+
+    private static final SmsQueue INSTANCE = new SmsQueue(createTransport(),
+            Paths.get(System.getProperty("sms.journal", "sms-outbox.journal")),
+            new TokenBucket(Double.parseDouble(System.getProperty("sms.ratePerSecond", "1")), Integer.getInteger("sms.burst", 5)));
+
+    private final SmsTransport transport;
+    private final Path journal;
+    private final TokenBucket rateLimiter;
+    private final DelayQueue<Outgoing> queue = new DelayQueue<>();
+    private final Map<Long, Outgoing> open = new LinkedHashMap<>();
+    private final Object journalLock = new Object();
+    private BufferedWriter journalWriter;
+    private long nextId = 1;
+    private int closedSinceCompaction;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong dead = new AtomicLong();
+    private final AtomicLong throttledMillis = new AtomicLong();
+
+    SmsQueue(SmsTransport transport, Path journal, TokenBucket rateLimiter) {
+        this.transport = transport;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        recover();
+        for (int i = 1; i <= WORKERS; i++) {
+            Thread worker = new Thread(this::work, "sms-sender-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public static SmsQueue getInstance() {
+        return INSTANCE;
+    }
+
+    public void enqueue(String toPhoneNumber, String message) {
+        Outgoing outgoing;
+        synchronized (journalLock) {
+            outgoing = new Outgoing(nextId++, toPhoneNumber, message);
+            appendToJournal("E " + outgoing.id + " " + encode(toPhoneNumber) + " " + encode(message));
+            open.put(outgoing.id, outgoing);
+        }
+        enqueued.incrementAndGet();
+        queue.put(outgoing);
+    }
+
+    public int getPendingCount() {
+        synchronized (journalLock) {
+            return open.size();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(enqueued.get(), sent.get(), retries.get(), dead.get(), getPendingCount(), throttledMillis.get());
+    }
+
+    /**
+     * throttledMillis = total time workers waited for the rate limiter.
+     */
+    public record Stats(long enqueued, long sent, long retries, long dead, int pending, long throttledMillis) {
+    }
+
+    private void work() {
+        while (true) {
+            Outgoing outgoing;
+            try {
+                outgoing = queue.take();
+                throttledMillis.addAndGet(rateLimiter.acquire());
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            outgoing.attempts++;
+            try {
+                transport.send(outgoing.to, outgoing.message);
+                sent.incrementAndGet();
+                close(outgoing, "D");
+            } catch (SmsTransport.SmsDeliveryException e) {
+                if (e.isRetriable() && outgoing.attempts < MAX_ATTEMPTS) {
+                    retries.incrementAndGet();
+                    long backoff = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (outgoing.attempts - 1));
+                    outgoing.notBefore = System.currentTimeMillis() + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                    queue.put(outgoing);
+                } else {
+                    dead.incrementAndGet();
+                    System.out.println("Giving up on SMS to " + outgoing.to + " after " + outgoing.attempts + " attempts: " + e.getMessage());
+                    close(outgoing, "X");
+                }
+            } catch (RuntimeException e) {
+                dead.incrementAndGet();
+                System.out.println("Giving up on SMS to " + outgoing.to + ": " + e.getMessage());
+                close(outgoing, "X");
+            }
+        }
+    }
+
+    // ---- journal ----
+
+    private void close(Outgoing outgoing, String marker) {
+        synchronized (journalLock) {
+            open.remove(outgoing.id);
+            appendToJournal(marker + " " + outgoing.id);
+            if (++closedSinceCompaction >= COMPACT_AFTER) {
+                compact();
+            }
+        }
+    }
+
+    private void appendToJournal(String entry) {
+        try {
+            if (journalWriter == null) {
+                journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            journalWriter.write(entry);
+            journalWriter.newLine();
+            journalWriter.flush();
+        } catch (IOException e) {
+            // the message is still queued in memory, it only loses its protection against a crash
+            System.out.println("Could not write SMS journal " + journal + ": " + e.getMessage());
+        }
+    }
+
+    // Reads the journal back and queues the messages that were neither sent nor given up
+    private void recover() {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                if (parts.length == 4 && parts[0].equals("E")) {
+                    long id = Long.parseLong(parts[1]);
+                    open.put(id, new Outgoing(id, decode(parts[2]), decode(parts[3])));
+                    nextId = Math.max(nextId, id + 1);
+                } else if (parts.length == 2 && (parts[0].equals("D") || parts[0].equals("X"))) {
+                    open.remove(Long.parseLong(parts[1]));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read SMS journal " + journal + ": " + e.getMessage());
+        }
+        if (!open.isEmpty()) {
+            System.out.println("Resending " + open.size() + " SMS left in " + journal);
+        }
+        compact();
+        queue.addAll(open.values());
+    }
+
+    private void compact() {
+        try {
+            if (journalWriter != null) {
+                journalWriter.close();
+                journalWriter = null;
+            }
+            List<String> entries = new ArrayList<>(open.size());
+            for (Outgoing outgoing : open.values()) {
+                entries.add("E " + outgoing.id + " " + encode(outgoing.to) + " " + encode(outgoing.message));
+            }
+            Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            Files.write(tmp, entries, StandardCharsets.UTF_8);
+            Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            closedSinceCompaction = 0;
+        } catch (IOException e) {
+            System.out.println("Could not compact SMS journal " + journal + ": " + e.getMessage());
+        }
+    }
+
+    private static String encode(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String text) {
+        return new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8);
+    }
+
+    private static SmsTransport createTransport() {
+        return "stub".equalsIgnoreCase(System.getProperty("sms.transport")) ? new StubSmsTransport() : new TwilioSmsTransport();
+    }
+
+    private static final class Outgoing implements Delayed {
+        private final long id;
+        private final String to;
+        private final String message;
+        private volatile int attempts;
+        private volatile long notBefore;
+
+        Outgoing(long id, String to, String message) {
+            this.id = id;
+            this.to = to;
+            this.message = message;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBefore - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            int byTime = Long.compare(notBefore, ((Outgoing) other).notBefore);
+            return byTime != 0 ? byTime : Long.compare(id, ((Outgoing) other).id);
+        }
+    }
+}
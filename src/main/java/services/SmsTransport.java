@@ -0,0 +1,28 @@
+package services;
+
+/**
+ * Delivers one SMS. Implementations are used by several SmsQueue workers at once and must be thread-safe.
+ */
+public interface SmsTransport {
+
+    void send(String toPhoneNumber, String message) throws SmsDeliveryException;
+
+    /**
+     * Failed delivery. retriable = the same message may succeed later (network error, rate limit,
+     * provider outage); otherwise it is dropped (e.g. invalid number).
+     */
+    class SmsDeliveryException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean retriable;
+
+        public SmsDeliveryException(String message, boolean retriable, Throwable cause) {
+            super(message, cause);
+            this.retriable = retriable;
+        }
+
+        public boolean isRetriable() {
+            return retriable;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package services;
+
+/**
+ * Thrown when a product was changed by another terminal after it was read:
+ * the version the caller holds no longer matches the row in the database.
+ */
+public class StaleProductException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int productId;
+
+    public StaleProductException(int productId, String message) {
+        super(message);
+        this.productId = productId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+}
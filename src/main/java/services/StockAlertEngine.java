@@ -0,0 +1,231 @@
+package services;
+
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Decides when a stock change is worth a notification.
+ *
+ * Writers (ProductService, StockReservationService) only report the new quantity of a lot, which
+ * is a map put and costs them nothing. Reports are coalesced for stock.alert.windowMs and then
+ * evaluated on the engine's own thread: only the last quantity of each lot in the window counts,
+ * and a lot only raises an alert when its level gets worse (OK -> LOW -> CRITICAL). Going back
+ * up resets the level silently, so the next drop alerts again. All alerts of a window are handed
+ * to the listeners as one batch; the default listener shows a single tray notification.
+ *
+ * Thresholds are per lot (table product_alert_threshold, db/007) with stock.alert.low /
+ * stock.alert.critical as defaults; a lot is LOW or CRITICAL when its quantity is below them.
+ * With stock.alert.coverHours > 0 the LOW threshold is raised to the stock the lot consumes in
+ * that many hours, from its observed consumption rate.
+ */
+public class StockAlertEngine {
+
+    public enum Level {
+        OK,
+        LOW,
+        CRITICAL
+    }
+
+    public record Thresholds(int low, int critical) {
+    }
+
+    public record StockAlert(int productId, String productName, int quantity, Level previousLevel, Level level, long timestamp) {
+    }
+
+    private static final int DEFAULT_LOW = Integer.getInteger("stock.alert.low", 50);
+    private static final int DEFAULT_CRITICAL = Integer.getInteger("stock.alert.critical", 10);
+    private static final long WINDOW_MS = Long.getLong("stock.alert.windowMs", 2000L);
+    private static final double COVER_HOURS = Double.parseDouble(System.getProperty("stock.alert.coverHours", "0"));
+    // consumption is measured over intervals of at least this length, then averaged
+    private static final long RATE_INTERVAL_MS = 10 * 60_000L;
+    // weight of the newest interval in the consumption rate average
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private static final StockAlertEngine INSTANCE = new StockAlertEngine();
+
+    private final Map<Integer, Observation> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, LotState> states = new ConcurrentHashMap<>();
+    private final Map<Integer, Thresholds> thresholds = new ConcurrentHashMap<>();
+    private final List<Consumer<List<StockAlert>>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-alerts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong reports = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong alerts = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private StockAlertEngine() {
+        listeners.add(NotificationService::showStockAlerts);
+    }
+
+    public static StockAlertEngine getInstance() {
+        return INSTANCE;
+    }
+
+    // Called after a lot's quantity was committed; never blocks
+    public void report(int productId, String productName, int quantity) {
+        reports.incrementAndGet();
+        pending.put(productId, new Observation(productName, quantity, System.currentTimeMillis()));
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void addListener(Consumer<List<StockAlert>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<List<StockAlert>> listener) {
+        listeners.remove(listener);
+    }
+
+    public Thresholds getThresholds(int productId) {
+        return thresholds.getOrDefault(productId, new Thresholds(DEFAULT_LOW, DEFAULT_CRITICAL));
+    }
+
+    // Saves the thresholds of one lot, they apply from the next report
+    public void setThresholds(int productId, Thresholds lotThresholds) {
+        if (lotThresholds.critical() > lotThresholds.low()) {
+            throw new IllegalArgumentException("Critical threshold must not be above the low threshold");
+        }
+        String req = "INSERT INTO product_alert_threshold (product_id, low_qty, critical_qty) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE low_qty = VALUES(low_qty), critical_qty = VALUES(critical_qty)";
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             PreparedStatement ps = cnx.prepareStatement(req)) {
+            ps.setInt(1, productId);
+            ps.setInt(2, lotThresholds.low());
+            ps.setInt(3, lotThresholds.critical());
+            ps.executeUpdate();
+            thresholds.put(productId, lotThresholds);
+        } catch (SQLException e) {
+            System.out.println("Error saving alert thresholds of product " + productId + ": " + e.getMessage());
+        }
+    }
+
+    public void loadThresholds() {
+        try (Connection cnx = MyDataBase.getInstance().getConnection();
+             Statement st = cnx.createStatement();
+             ResultSet res = st.executeQuery("SELECT product_id, low_qty, critical_qty FROM product_alert_threshold")) {
+            thresholds.clear();
+            while (res.next()) {
+                thresholds.put(res.getInt("product_id"), new Thresholds(res.getInt("low_qty"), res.getInt("critical_qty")));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error loading alert thresholds: " + e.getMessage());
+        }
+    }
+
+    public Level getLevel(int productId) {
+        LotState state = states.get(productId);
+        return state == null ? Level.OK : state.level;
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<StockAlert> batch = new ArrayList<>();
+        for (Integer productId : new ArrayList<>(pending.keySet())) {
+            Observation observation = pending.remove(productId);
+            if (observation != null) {
+                StockAlert alert = evaluate(productId, observation);
+                if (alert != null) {
+                    batch.add(alert);
+                }
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        alerts.addAndGet(batch.size());
+        batches.incrementAndGet();
+        for (Consumer<List<StockAlert>> listener : listeners) {
+            try {
+                listener.accept(batch);
+            } catch (RuntimeException e) {
+                System.out.println("Stock alert listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private StockAlert evaluate(int productId, Observation observation) {
+        evaluations.incrementAndGet();
+        LotState state = states.computeIfAbsent(productId, id -> new LotState());
+        state.updateRate(observation);
+
+        Thresholds lotThresholds = getThresholds(productId);
+        int low = lotThresholds.low();
+        if (COVER_HOURS > 0) {
+            low = Math.max(low, (int) Math.ceil(state.unitsPerHour * COVER_HOURS));
+        }
+        Level level = observation.quantity < lotThresholds.critical() ? Level.CRITICAL
+                : observation.quantity < low ? Level.LOW
+                : Level.OK;
+
+        Level previous = state.level;
+        state.level = level;
+        if (level.compareTo(previous) <= 0) {
+            return null;
+        }
+        return new StockAlert(productId, observation.productName, observation.quantity, previous, level, observation.timestamp);
+    }
+
+    public Stats getStats() {
+        return new Stats(reports.get(), evaluations.get(), alerts.get(), batches.get());
+    }
+
+    /**
+     * reports = quantities reported by writers, evaluations = after coalescing, alerts = level changes notified.
+     */
+    public record Stats(long reports, long evaluations, long alerts, long batches) {
+    }
+
+    private record Observation(String productName, int quantity, long timestamp) {
+    }
+
+    // Only touched by the engine thread
+    private static class LotState {
+        private Level level = Level.OK;
+        private int lastQuantity = -1;
+        private long intervalStart;
+        private int consumedInInterval;
+        private double unitsPerHour;
+
+        void updateRate(Observation observation) {
+            if (lastQuantity < 0) {
+                intervalStart = observation.timestamp;
+            } else {
+                // intakes raise the quantity and are not consumption
+                consumedInInterval += Math.max(lastQuantity - observation.quantity, 0);
+                long elapsed = observation.timestamp - intervalStart;
+                if (elapsed >= RATE_INTERVAL_MS) {
+                    double rate = consumedInInterval / (elapsed / 3_600_000.0);
+                    unitsPerHour = unitsPerHour == 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * unitsPerHour;
+                    intervalStart = observation.timestamp;
+                    consumedInInterval = 0;
+                }
+            }
+            lastQuantity = observation.quantity;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package services;
+
+import models.Line;
+import utils.MyDataBase;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes stock out of a lot and puts it in a basket as one atomic operation.
+ *
+ * The stock check is done by the database (UPDATE ... WHERE quantity >= ?), in the same
+ * transaction as the basket line and the history row, so two terminals can never sell
+ * the same units twice.
+ */
+public class StockReservationService {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final AtomicLong attempts = new AtomicLong();
+    private static final AtomicLong reserved = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+    private static final AtomicLong lockRetries = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+    private static final AtomicLong totalLatencyNanos = new AtomicLong();
+    private static final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private final LineService lineService = new LineService();
+
+    /**
+     * Outcome of an allocation across lots: the lines that were added, earliest-expiring lot first.
+     */
+    public record Allocation(boolean success, List<Line> lines, String message) {
+        public int allocatedQuantity() {
+            return lines.stream().mapToInt(Line::getLineQuantity).sum();
+        }
+    }
+
+    /**
+     * Puts quantity units of a product in a basket, taken from its earliest-expiring lots first
+     * (expired lots are skipped). The plan comes from LotIndex; every lot's decrement is still
+     * checked by the database, and all lines are added in one transaction or none are. When the
+     * index was out of date the product's lots are reloaded and the plan is made again, whether it
+     * had more stock than the database (the decrement fails) or less (the plan comes up short:
+     * another terminal restocked the product or added a lot).
+     */
+    public Allocation allocate(String productName, int quantity, int basketId, int userId) {
+        if (quantity <= 0) {
+            return new Allocation(false, List.of(), "Quantity must be greater than zero.");
+        }
+        InventoryEvents.BasketAdd event = new InventoryEvents.BasketAdd();
+        event.begin();
+        event.productName = productName;
+        event.basketId = basketId;
+        event.quantity = quantity;
+        long start = System.nanoTime();
+        attempts.incrementAndGet();
+        try {
+            boolean reloaded = false;
+            for (int attempt = 1; ; attempt++) {
+                event.attempts = attempt;
+                try {
+                    List<Line> plan = planAllocation(productName, quantity, basketId, userId);
+                    if (plan == null && !reloaded) {
+                        // the index may be missing stock added elsewhere, only the database can say no
+                        LotIndex.getInstance().reload(productName);
+                        reloaded = true;
+                        plan = planAllocation(productName, quantity, basketId, userId);
+                    }
+                    if (plan == null) {
+                        rejected.incrementAndGet();
+                        return new Allocation(false, List.of(), "Quantity exceeds available quantity for the product.");
+                    }
+                    if (tryAllocate(plan)) {
+                        reserved.incrementAndGet();
+                        event.succeeded = true;
+                        if (event.shouldCommit()) {
+                            event.productIds = plan.stream().map(line -> String.valueOf(line.getProductId())).collect(Collectors.joining(","));
+                        }
+                        return new Allocation(true, plan, "Line added to the basket successfully.");
+                    }
+                    // a lot had less stock than the index said
+                    LotIndex.getInstance().reload(productName);
+                    reloaded = true;
+                } catch (SQLException e) {
+                    boolean contended = "40001".equals(e.getSQLState()) || e.getErrorCode() == 1205;
+                    if (!contended) {
+                        failures.incrementAndGet();
+                        System.out.println("Error allocating " + productName + ": " + e.getMessage());
+                        return new Allocation(false, List.of(), "Error reserving product: " + e.getMessage());
+                    }
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    failures.incrementAndGet();
+                    return new Allocation(false, List.of(), "Could not reserve " + productName + ": too many concurrent changes.");
+                }
+                lockRetries.incrementAndGet();
+                sleepBeforeRetry(attempt);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            totalLatencyNanos.addAndGet(elapsed);
+            maxLatencyNanos.accumulateAndGet(elapsed, Math::max);
+            event.commit();
+        }
+    }
+
+    // One line per lot, earliest expiration first, or null when the lots cannot cover the quantity
+    private List<Line> planAllocation(String productName, int quantity, int basketId, int userId) throws SQLException {
+        Date today = Date.valueOf(LocalDate.now());
+        List<Line> plan = new ArrayList<>();
+        int left = quantity;
+        for (LotIndex.Lot lot : LotIndex.getInstance().lotsFor(productName)) {
+            if (left == 0) {
+                break;
+            }
+            int take = Math.min(left, lot.quantity());
+            if (take > 0) {
+                Line line = new Line(0, take, basketId, lot.productId(), userId, today);
+                line.setName(lot.productName());
+                plan.add(line);
+                left -= take;
+            }
+        }
+        return left == 0 ? plan : null;
+    }
+
+    // Applies the whole plan in one transaction; false (rolled back) when a lot no longer had the planned stock
+    private boolean tryAllocate(List<Line> plan) throws SQLException {
+        String decrementQuery = "UPDATE product SET history_total = history_total + quantity - ?, quantity = quantity - ?, modified_at = ?, version = version + 1 "
+                + "WHERE product_id = ? AND quantity >= ?";
+
+        boolean writeBehind = HistoryRecorder.writeBehind();
+        try (Connection cnx = MyDataBase.getInstance().getConnection()) {
+            cnx.setAutoCommit(false);
+            try (PreparedStatement decrementStatement = cnx.prepareStatement(decrementQuery)) {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                // lots are locked in expiration order, the same order for every allocation of the product
+                int[] counts = BatchSupport.executeInChunks(decrementStatement, plan, (ps, line) -> {
+                    ps.setInt(1, line.getLineQuantity());
+                    ps.setInt(2, line.getLineQuantity());
+                    ps.setTimestamp(3, now);
+                    ps.setInt(4, line.getProductId());
+                    ps.setInt(5, line.getLineQuantity());
+                });
+                for (int count : counts) {
+                    if (!BatchSupport.applied(count)) {
+                        cnx.rollback();
+                        return false;
+                    }
+                }
+
+                Map<Integer, Integer> remaining = new HashMap<>();
+                List<HistoryEvent> history = new ArrayList<>();
+                for (Line line : plan) {
+                    lineService.ajouter(cnx, line);
+                    if (!writeBehind) {
+                        HistoryRecorder.snapshot(cnx, line.getProductId(), now);
+                    }
+                }
+                String ids = plan.stream().map(line -> String.valueOf(line.getProductId())).collect(Collectors.joining(","));
+                try (Statement st = cnx.createStatement();
+                     ResultSet res = st.executeQuery("SELECT product_id, product_name, quantity, expiration_date FROM product WHERE product_id IN (" + ids + ")")) {
+                    while (res.next()) {
+                        remaining.put(res.getInt("product_id"), res.getInt("quantity"));
+                        if (writeBehind) {
+                            history.add(new HistoryEvent(res.getInt("product_id"), res.getString("product_name"),
+                                    res.getInt("quantity"), res.getDate("expiration_date"), now));
+                        }
+                    }
+                }
+
+                cnx.commit();
+                HistoryRecorder.submit(history);
+
+                for (Line line : plan) {
+                    int left = remaining.getOrDefault(line.getProductId(), 0);
+                    LotIndex.getInstance().setQuantity(line.getProductId(), left);
+                    StockAlertEngine.getInstance().report(line.getProductId(), line.getName(), left);
+                }
+                return true;
+            } catch (SQLException e) {
+                cnx.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5, 25L * attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static ReservationStats getStats() {
+        return new ReservationStats(attempts.get(), reserved.get(), rejected.get(), lockRetries.get(), failures.get(),
+                totalLatencyNanos.get() / 1_000_000.0, maxLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * Reservation counters. rejected = not enough stock, lockRetries = retries after a deadlock or lock wait timeout.
+     */
+    public record ReservationStats(long attempts, long reserved, long rejected, long lockRetries, long failures,
+                                   double totalLatencyMillis, double maxLatencyMillis) {
+        public double averageLatencyMillis() {
+            return attempts == 0 ? 0 : totalLatencyMillis / attempts;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Offline transport (-Dsms.transport=stub): prints and records the messages instead of sending them.
+ * With a failure rate > 0 some sends fail with a retriable error, to exercise the queue's retries.
+ */
+public class StubSmsTransport implements SmsTransport {
+
+    public record SentSms(String toPhoneNumber, String message, long timestamp) {
+    }
+
+    private final double failureRate;
+    private final List<SentSms> sent = Collections.synchronizedList(new ArrayList<>());
+
+    public StubSmsTransport() {
+        this(Double.parseDouble(System.getProperty("sms.stub.failureRate", "0")));
+    }
+
+    public StubSmsTransport(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public void send(String toPhoneNumber, String message) throws SmsDeliveryException {
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new SmsDeliveryException("Simulated failure", true, null);
+        }
+        sent.add(new SentSms(toPhoneNumber, message, System.currentTimeMillis()));
+        System.out.println("[sms stub] to " + toPhoneNumber + ": " + message);
+    }
+
+    public List<SentSms> getSent() {
+        synchronized (sent) {
+            return new ArrayList<>(sent);
+        }
+    }
+}
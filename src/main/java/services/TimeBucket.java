@@ -0,0 +1,52 @@
+package services;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Resolution of the product history time series. Each bucket knows the SQL expression that
+ * truncates modified_at to the start of its bucket, so the grouping is done by MySQL.
+ */
+public enum TimeBucket {
+    HOUR("CAST(DATE_FORMAT(modified_at, '%Y-%m-%d %H:00:00') AS DATETIME)", null, "yyyy-MM-dd HH:00"),
+    DAY("CAST(DATE(modified_at) AS DATETIME)", "CAST(day AS DATETIME)", "yyyy-MM-dd"),
+    WEEK("CAST(DATE_SUB(DATE(modified_at), INTERVAL WEEKDAY(modified_at) DAY) AS DATETIME)",
+            "CAST(DATE_SUB(day, INTERVAL WEEKDAY(day) DAY) AS DATETIME)", "yyyy-MM-dd");
+
+    private final String sqlExpression;
+    private final String rollupExpression;
+    private final DateTimeFormatter labelFormat;
+
+    TimeBucket(String sqlExpression, String rollupExpression, String labelPattern) {
+        this.sqlExpression = sqlExpression;
+        this.rollupExpression = rollupExpression;
+        this.labelFormat = DateTimeFormatter.ofPattern(labelPattern);
+    }
+
+    // Bucket expression over product_history.modified_at
+    String sqlExpression() {
+        return sqlExpression;
+    }
+
+    // Bucket expression over product_history_daily.day, null when the bucket is finer than a day
+    String rollupExpression() {
+        return rollupExpression;
+    }
+
+    public DateTimeFormatter labelFormat() {
+        return labelFormat;
+    }
+
+    // Picks a resolution that keeps the chart at a few hundred points at most
+    public static TimeBucket forRange(LocalDate start, LocalDate end) {
+        long days = ChronoUnit.DAYS.between(start, end) + 1;
+        if (days <= 7) {
+            return HOUR;
+        }
+        if (days <= 180) {
+            return DAY;
+        }
+        return WEEK;
+    }
+}
@@ -0,0 +1,34 @@
+package services;
+
+import com.twilio.Twilio;
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+
+/**
+ * Sends through the Twilio REST API. The client is initialized once, when the transport is created.
+ */
+public class TwilioSmsTransport implements SmsTransport {
+
+    private final PhoneNumber from;
+
+    public TwilioSmsTransport() {
+        Twilio.init(TwilioConfig.ACCOUNT_SID, TwilioConfig.AUTH_TOKEN);
+        this.from = new PhoneNumber(TwilioConfig.TWILIO_PHONE_NUMBER);
+    }
+
+    @Override
+    public void send(String toPhoneNumber, String message) throws SmsDeliveryException {
+        try {
+            Message.creator(new PhoneNumber(toPhoneNumber), from, message).create();
+        } catch (ApiConnectionException e) {
+            throw new SmsDeliveryException("Twilio unreachable: " + e.getMessage(), true, e);
+        } catch (ApiException e) {
+            // 429 (rate limited) and 5xx are worth another try, other 4xx (bad number, auth) are not
+            Integer status = e.getStatusCode();
+            boolean retriable = status == null || status == 429 || status >= 500;
+            throw new SmsDeliveryException("Twilio error " + status + ": " + e.getMessage(), retriable, e);
+        }
+    }
+}
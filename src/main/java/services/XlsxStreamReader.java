@@ -0,0 +1,155 @@
+package services;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reads the first sheet of an .xlsx file with POI's event model (XSSFReader + SAX).
+ *
+ * Only the current row is kept in memory, so the size of the sheet does not matter.
+ * Cells are handed over as raw strings: shared/inline strings are resolved, numbers
+ * and dates are left as the value stored in the file (dates are Excel serial numbers).
+ */
+public class XlsxStreamReader {
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void onRow(int rowIndex, String[] cells) throws Exception;
+    }
+
+    public static void read(File file, int columnCount, RowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(sharedStrings, columnCount, handler));
+                parser.parse(new InputSource(sheet));
+            } catch (SAXException e) {
+                // unwrap errors thrown by the row handler (e.g. SQLException from the insert pipeline)
+                if (e.getException() != null) {
+                    throw e.getException();
+                }
+                throw e;
+            }
+        } catch (OpenXML4JException | ParserConfigurationException e) {
+            throw new IOException("Not a readable .xlsx file: " + file.getName(), e);
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final RowHandler handler;
+        private final String[] cells;
+        private final StringBuilder value = new StringBuilder();
+
+        private int rowIndex = -1;
+        private int column;
+        private String cellType;
+        private boolean inValue;
+
+        SheetHandler(ReadOnlySharedStringsTable sharedStrings, int columnCount, RowHandler handler) {
+            this.sharedStrings = sharedStrings;
+            this.handler = handler;
+            this.cells = new String[columnCount];
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+                    Arrays.fill(cells, null);
+                    column = 0;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    if (ref != null) {
+                        column = columnIndex(ref);
+                    }
+                    cellType = attributes.getValue("t");
+                    value.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    if (column < cells.length) {
+                        cells[column] = cellValue();
+                    }
+                    column++;
+                    break;
+                case "row":
+                    try {
+                        handler.onRow(rowIndex, cells);
+                    } catch (Exception e) {
+                        throw new SAXException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String cellValue() {
+            if (value.length() == 0) {
+                return null;
+            }
+            if ("s".equals(cellType)) {
+                return sharedStrings.getItemAt(Integer.parseInt(value.toString())).getString();
+            }
+            return value.toString();
+        }
+
+        // "C12" -> 2
+        private static int columnIndex(String ref) {
+            int index = 0;
+            for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+                index = index * 26 + (ref.charAt(i) - 'A' + 1);
+            }
+            return index - 1;
+        }
+    }
+}
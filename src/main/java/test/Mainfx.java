@@ -5,8 +5,25 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import services.AlertDigest;
+import services.HistoryWriteBehind;
+import services.LotIndex;
+import services.ProductDictionary;
+import services.StockAlertEngine;
 
 public class Mainfx extends Application {
+    // Runs on the launcher thread before start(), so the database reads below never block the FX thread
+    @Override
+    public void init() {
+        // Load the product id/name dictionary before the first screen asks for it
+        ProductDictionary.getInstance().warm();
+        LotIndex.getInstance().warm();
+        StockAlertEngine.getInstance().loadThresholds();
+        HistoryWriteBehind.startIfEnabled();
+        // Low-stock and expiry SMS are grouped per recipient
+        AlertDigest.getInstance().start();
+    }
+
     @Override
     public void start(Stage stage) throws Exception {
         // load the fxml file
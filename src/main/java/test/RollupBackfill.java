@@ -0,0 +1,13 @@
+package test;
+
+import services.HistoryRollup;
+
+import java.sql.SQLException;
+
+// Rebuilds product_history_daily from product_history (run once after applying db/004)
+public class RollupBackfill {
+
+    public static void main(String[] args) throws SQLException {
+        HistoryRollup.backfillAll();
+    }
+}
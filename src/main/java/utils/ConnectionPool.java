@@ -0,0 +1,350 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool.
+ *
+ * Connections handed out by {@link #borrow()} are proxies: calling close() on them
+ * gives the physical connection back to the pool instead of closing the socket,
+ * so callers simply use try-with-resources around each unit of work. Statements the
+ * caller forgot to close are closed at that point too.
+ *
+ * Each physical connection keeps up to statementCacheSize prepared statements open
+ * (see StatementCache), so services that prepare the same SQL on every call only pay
+ * for the prepare once per connection. 0 disables the cache.
+ *
+ * Every borrow and every statement executed on it is timed for QueryMetrics (JMX).
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // idle physical connections, most recently returned first
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    // one permit per connection that may be checked out at the same time
+    private final Semaphore permits;
+    private volatile boolean shutdown;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize, long borrowTimeoutMillis, int validationTimeoutSeconds,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        fillToMinimum();
+    }
+
+    /**
+     * Borrows a validated connection, waiting at most the configured borrow timeout
+     * when every connection is in use. Broken connections are replaced transparently.
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        if (permits.tryAcquire()) {
+            acquired = true;
+        } else {
+            waited.incrementAndGet();
+            try {
+                acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted while waiting for a database connection");
+            }
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                    + " ms waiting for a database connection (" + active.get() + "/" + maxSize + " in use)");
+        }
+
+        try {
+            Connection physical = takeValidConnection();
+            borrowed.incrementAndGet();
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return wrap(physical, QueryMetrics.ENABLED ? QueryMetrics.begin(start) : null);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeValidConnection() throws SQLException {
+        Connection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            if (isUsable(candidate)) {
+                return candidate;
+            }
+            discard(candidate);
+        }
+        return openConnection();
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        open.incrementAndGet();
+        created.incrementAndGet();
+        return connection;
+    }
+
+    private void discard(Connection connection) {
+        open.decrementAndGet();
+        discarded.incrementAndGet();
+        StatementCache statements = statementCaches.remove(connection);
+        if (statements != null) {
+            statements.closeAll();
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // the connection is already unusable
+        }
+    }
+
+    private void release(Connection physical, boolean broken) {
+        active.decrementAndGet();
+        try {
+            if (broken || shutdown || physical.isClosed()) {
+                discard(physical);
+            } else {
+                // never hand an open transaction to the next borrower
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void fillToMinimum() {
+        while (open.get() < minSize) {
+            try {
+                idle.offerLast(openConnection());
+            } catch (SQLException e) {
+                // the database may not be up yet; connections are opened on demand later
+                System.out.println("Could not pre-open database connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections. Connections still checked out are closed when returned.
+     */
+    public void shutdown() {
+        shutdown = true;
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection);
+        }
+    }
+
+    private Connection wrap(Connection physical, QueryMetrics.Call call) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(physical, call));
+    }
+
+    public Stats getStats() {
+        int cachedStatements = statementCaches.values().stream().mapToInt(StatementCache::size).sum();
+        return new Stats(minSize, maxSize, open.get(), idle.size(), active.get(), peakActive.get(),
+                borrowed.get(), waited.get(), timeouts.get(), created.get(), discarded.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+                cachedStatements, statementCounters.hits.get(), statementCounters.misses.get(), statementCounters.evictions.get());
+    }
+
+    /**
+     * Snapshot of the pool counters, used to check how saturated the pool is and how often
+     * prepared statements are reused (statementHits) rather than prepared again (statementMisses).
+     */
+    public record Stats(int minSize, int maxSize, int open, int idle, int active, int peakActive,
+                        long borrowed, long waited, long timeouts, long created, long discarded,
+                        long totalWaitMillis, int cachedStatements, long statementHits, long statementMisses,
+                        long statementEvictions) {
+
+        public double saturation() {
+            return (double) active / maxSize;
+        }
+
+        public double statementHitRate() {
+            long prepares = statementHits + statementMisses;
+            return prepares == 0 ? 0 : (double) statementHits / prepares;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats [active=" + active + "/" + maxSize + ", idle=" + idle + ", open=" + open
+                    + ", peakActive=" + peakActive + ", borrowed=" + borrowed + ", waited=" + waited
+                    + ", timeouts=" + timeouts + ", created=" + created + ", discarded=" + discarded
+                    + ", totalWaitMillis=" + totalWaitMillis + ", cachedStatements=" + cachedStatements
+                    + ", statementHitRate=" + String.format("%.2f", statementHitRate()) + ", statementEvictions=" + statementEvictions + "]";
+        }
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        // null when metrics are off
+        private final QueryMetrics.Call call;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned;
+        private boolean broken;
+
+        PooledConnectionHandler(Connection physical, QueryMetrics.Call call) {
+            this.physical = physical;
+            this.call = call;
+            this.statementCache = statementCacheSize > 0
+                    ? statementCaches.computeIfAbsent(physical, c -> new StatementCache(c, statementCacheSize, statementCounters))
+                    : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            closeStatements();
+                            release(physical, broken);
+                            if (call != null) {
+                                call.end();
+                            }
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "unwrap":
+                    if (args[0] == Connection.class) {
+                        return proxy;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                Object result = isCacheable(method, args)
+                        ? statementCache.prepare((String) args[0], args.length == 2 ? (Integer) args[1] : StatementCache.NO_KEYS_ARGUMENT)
+                        : method.invoke(physical, args);
+                if (result instanceof Statement statement) {
+                    if (call != null) {
+                        statement = TimedStatement.wrap(statement, call);
+                        result = statement;
+                    }
+                    synchronized (this) {
+                        statements.add(statement);
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            } catch (SQLException e) {
+                // from the statement cache's prepare
+                throw failed(e);
+            }
+        }
+
+        private Throwable failed(Throwable cause) {
+            if (call != null) {
+                call.failed();
+            }
+            // SQLState class 08 means the link itself is gone
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && sqlException.getSQLState().startsWith("08")) {
+                broken = true;
+            }
+            return cause;
+        }
+
+        // prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys)
+        private boolean isCacheable(Method method, Object[] args) {
+            return statementCache != null && method.getName().equals("prepareStatement")
+                    && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+
+        private void closeStatements() {
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // closing is best effort, the connection is going back either way
+                }
+            }
+            statements.clear();
+        }
+    }
+}
@@ -1,35 +1,51 @@
 package utils;
 
-import javax.xml.crypto.Data;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class MyDataBase {
-    private final String URL = "jdbc:mysql://localhost:3306/foodbank";
-    private final String USER = "root";
-    private final String PWD = "";
+    // useServerPrepStmts: statements are prepared once on the server and kept by the pool's statement cache
+    private static final String URL = System.getProperty("db.url", "jdbc:mysql://localhost:3306/foodbank?rewriteBatchedStatements=true&useServerPrepStmts=true");
+    private static final String USER = System.getProperty("db.user", "root");
+    private static final String PWD = System.getProperty("db.password", "");
 
-    private Connection connection;
+    // Pool settings, overridable with -Ddb.pool.min=... etc.
+    private static final int POOL_MIN = Integer.getInteger("db.pool.min", 2);
+    private static final int POOL_MAX = Integer.getInteger("db.pool.max", 10);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("db.pool.borrowTimeoutMs", 5000L);
+    private static final int VALIDATION_TIMEOUT_S = Integer.getInteger("db.pool.validationTimeoutS", 2);
+    // Prepared statements kept open per connection, 0 disables the cache
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 64);
 
-    private static MyDataBase instance;
+    private final ConnectionPool pool;
 
     private MyDataBase(){
-        try {
-            connection = DriverManager.getConnection(URL,USER,PWD);
-            System.out.println("Connected successfully !");
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
+        pool = new ConnectionPool(URL, USER, PWD, POOL_MIN, POOL_MAX, BORROW_TIMEOUT_MS, VALIDATION_TIMEOUT_S, STATEMENT_CACHE_SIZE);
+        System.out.println("Connection pool ready: " + pool.getStats());
+    }
+
+    // Initialization-on-demand holder: lazy and thread-safe without locking
+    private static class Holder {
+        private static final MyDataBase INSTANCE = new MyDataBase();
     }
 
     public static MyDataBase getInstance(){
-        if(instance == null)
-            instance = new MyDataBase();
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Borrows a connection from the pool. Close it (try-with-resources) when the unit of
+     * work is done so it goes back to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
+    }
+
+    public ConnectionPool.Stats getPoolStats(){
+        return pool.getStats();
     }
 
-    public Connection getConnection(){
-        return this.connection;
+    public void shutdown(){
+        pool.shutdown();
     }
-}
\ No newline at end of file
+}
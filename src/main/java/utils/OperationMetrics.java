@@ -0,0 +1,90 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, throughput, errors and rows of one operation (a service method, or the SQL it runs).
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private volatile long since = System.currentTimeMillis();
+
+    OperationMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.percentileMillis(0.50);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.percentileMillis(0.99);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMaxMillis();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMeanMillis();
+    }
+
+    @Override
+    public double getThroughputPerSecond() {
+        double seconds = (System.currentTimeMillis() - since) / 1000.0;
+        return seconds <= 0 ? 0 : getCount() / seconds;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.set(0);
+        rows.set(0);
+        since = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return operation + " [count=" + getCount() + ", errors=" + getErrors() + ", rows=" + getRows()
+                + String.format(", p50=%.2fms, p99=%.2fms, max=%.2fms]", getP50Millis(), getP99Millis(), getMaxMillis());
+    }
+}
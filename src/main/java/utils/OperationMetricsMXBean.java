@@ -0,0 +1,28 @@
+package utils;
+
+/**
+ * JMX view of one operation's metrics, see QueryMetrics. Everything counts from the start
+ * (or the last reset()).
+ */
+public interface OperationMetricsMXBean {
+
+    String getOperation();
+
+    long getCount();
+
+    long getErrors();
+
+    long getRows();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    double getMeanMillis();
+
+    double getThroughputPerSecond();
+
+    void reset();
+}
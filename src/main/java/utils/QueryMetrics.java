@@ -0,0 +1,138 @@
+package utils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-operation latency metrics of the service layer, published over JMX.
+ *
+ * ConnectionPool records them: a service call is the time from borrowing a connection to giving
+ * it back, a statement is one execute on it. Both are named after the method that borrowed the
+ * connection (e.g. "ProductService.ajouter"), found once per borrow by walking the stack, so the
+ * services need no code of their own. In JConsole they appear under tn.esprit.pidev, type
+ * ServiceCalls and SqlStatements, one MBean per operation.
+ *
+ * -Dmetrics.enabled=false turns the recording off.
+ */
+public class QueryMetrics {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+
+    private static final String DOMAIN = "tn.esprit.pidev";
+    // frames that borrow a connection on behalf of their caller
+    private static final Set<String> HELPERS = Set.of("services.RowStreams", "services.BatchSupport");
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private static final Map<String, OperationMetrics> calls = new ConcurrentHashMap<>();
+    private static final Map<String, OperationMetrics> statements = new ConcurrentHashMap<>();
+
+    private QueryMetrics() {
+    }
+
+    /**
+     * What one borrowed connection did, reported when it goes back to the pool.
+     */
+    static final class Call {
+        private final String operation;
+        private final long startNanos;
+        private long rows;
+        private boolean failed;
+
+        private Call(String operation, long startNanos) {
+            this.operation = operation;
+            this.startNanos = startNanos;
+        }
+
+        void statementExecuted(long nanos, long rowCount, boolean statementFailed) {
+            OperationMetrics metrics = statements.computeIfAbsent(operation, name -> register("SqlStatements", name));
+            metrics.record(nanos, statementFailed);
+            addRows(rowCount);
+            failed |= statementFailed;
+        }
+
+        // Rows read from a result set, counted as they are read
+        void addRows(long rowCount) {
+            if (rowCount > 0) {
+                rows += rowCount;
+                statements.computeIfAbsent(operation, name -> register("SqlStatements", name)).addRows(rowCount);
+            }
+        }
+
+        void failed() {
+            failed = true;
+        }
+
+        void end() {
+            OperationMetrics metrics = calls.computeIfAbsent(operation, name -> register("ServiceCalls", name));
+            metrics.record(System.nanoTime() - startNanos, failed);
+            metrics.addRows(rows);
+        }
+    }
+
+    // Starts a call named after the code that is borrowing the connection
+    static Call begin(long startNanos) {
+        return new Call(callerOf(), startNanos);
+    }
+
+    public static List<OperationMetrics> getCalls() {
+        return sorted(calls);
+    }
+
+    public static List<OperationMetrics> getStatements() {
+        return sorted(statements);
+    }
+
+    private static List<OperationMetrics> sorted(Map<String, OperationMetrics> metrics) {
+        List<OperationMetrics> list = new ArrayList<>(metrics.values());
+        list.sort(Comparator.comparing(OperationMetrics::getOperation));
+        return list;
+    }
+
+    private static String callerOf() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> isApplicationFrame(frame.getClassName()))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + methodName(frame.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    private static boolean isApplicationFrame(String className) {
+        return !className.startsWith("utils.") && !className.startsWith("java.") && !className.startsWith("jdk.")
+                && !className.startsWith("com.mysql.") && !HELPERS.contains(className);
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    // lambda$ajouterAll$3 -> ajouterAll
+    private static String methodName(String method) {
+        if (method.startsWith("lambda$")) {
+            int end = method.indexOf('$', "lambda$".length());
+            return end > 0 ? method.substring("lambda$".length(), end) : method;
+        }
+        return method;
+    }
+
+    private static OperationMetrics register(String type, String operation) {
+        OperationMetrics metrics = new OperationMetrics(operation);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(operation));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            System.out.println("Could not publish metrics of " + operation + ": " + e.getMessage());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,175 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statements of one physical connection, kept open across borrows and keyed by SQL.
+ *
+ * prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) on a pooled connection
+ * return a cached statement when there is one: closing it clears its parameters and batch and
+ * puts it back instead of closing it, so the next caller with the same SQL skips the parse and
+ * the server-side prepare. Above maxSize the least recently used statement is closed. When the
+ * same SQL is prepared again while its statement is still open, the second caller gets an
+ * ordinary, uncached statement.
+ */
+class StatementCache {
+
+    /**
+     * Counters shared by all the caches of a pool.
+     */
+    static class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    // autoGeneratedKeys of prepareStatement(sql)
+    static final int NO_KEYS_ARGUMENT = -1;
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Counters counters;
+    // access order: the first entry is the least recently used
+    private final LinkedHashMap<Key, Cached> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int maxSize, Counters counters) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.counters = counters;
+    }
+
+    synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Cached cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            counters.hits.incrementAndGet();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+        counters.misses.incrementAndGet();
+        PreparedStatement statement = autoGeneratedKeys == NO_KEYS_ARGUMENT
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // the cached one is still open in this unit of work
+            return statement;
+        }
+        cached = new Cached(key, statement);
+        cached.inUse = true;
+        statements.put(key, cached);
+        evict();
+        return cached.proxy;
+    }
+
+    // Closes the statements that are no longer needed, i.e. the physical connection is closed
+    synchronized void closeAll() {
+        for (Cached cached : statements.values()) {
+            closeQuietly(cached.statement);
+        }
+        statements.clear();
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private void evict() {
+        Iterator<Cached> iterator = statements.values().iterator();
+        while (statements.size() > maxSize && iterator.hasNext()) {
+            Cached eldest = iterator.next();
+            if (!eldest.inUse) {
+                iterator.remove();
+                closeQuietly(eldest.statement);
+                counters.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void giveBack(Cached cached) {
+        if (!cached.inUse) {
+            return;
+        }
+        try {
+            ResultSet open = cached.statement.getResultSet();
+            if (open != null) {
+                open.close();
+            }
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            cached.inUse = false;
+            evict();
+        } catch (SQLException e) {
+            // a statement that cannot be reset is not reused
+            statements.remove(cached.key);
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // the statement is dropped either way
+        }
+    }
+
+    private class Cached implements InvocationHandler {
+        private final Key key;
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse;
+
+        Cached(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack(this);
+                    return null;
+                case "isClosed":
+                    synchronized (StatementCache.this) {
+                        return !inUse || statement.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + statement;
+                default:
+                    break;
+            }
+            synchronized (StatementCache.this) {
+                if (!inUse) {
+                    throw new SQLException("Statement has already been closed");
+                }
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
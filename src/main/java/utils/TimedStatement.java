@@ -0,0 +1,125 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Statement proxy that reports every execute to the QueryMetrics call of its connection:
+ * duration, update counts, rows read from the result set and failures.
+ */
+final class TimedStatement implements InvocationHandler {
+
+    private final Statement target;
+    private final QueryMetrics.Call call;
+
+    private TimedStatement(Statement target, QueryMetrics.Call call) {
+        this.target = target;
+        this.call = call;
+    }
+
+    static Statement wrap(Statement statement, QueryMetrics.Call call) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(TimedStatement.class.getClassLoader(), new Class<?>[]{type},
+                new TimedStatement(statement, call));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        if (!method.getName().startsWith("execute")) {
+            return invokeTarget(method, args);
+        }
+
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invokeTarget(method, args);
+        } catch (SQLException e) {
+            call.statementExecuted(System.nanoTime() - start, 0, true);
+            throw e;
+        }
+        call.statementExecuted(System.nanoTime() - start, updatedRows(result), false);
+        if (result instanceof ResultSet resultSet) {
+            return countingRows(resultSet);
+        }
+        return result;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long updatedRows(Object result) {
+        if (result instanceof Integer count) {
+            return Math.max(count, 0);
+        }
+        if (result instanceof Long count) {
+            return Math.max(count, 0);
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    // Counts next() == true and reports the count once the result set is done
+    private ResultSet countingRows(ResultSet resultSet) {
+        long[] rows = new long[1];
+        return (ResultSet) Proxy.newProxyInstance(TimedStatement.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(resultSet, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("next")) {
+                        if ((Boolean) result) {
+                            rows[0]++;
+                        } else {
+                            call.addRows(rows[0]);
+                            rows[0] = 0;
+                        }
+                    } else if (method.getName().equals("close")) {
+                        call.addRows(rows[0]);
+                        rows[0] = 0;
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,10 @@
+-- A lot is identified by (product_name, expiration_date).
+-- ProductService.ajouter upserts on this key, so concurrent intakes of the same lot
+-- update one row instead of creating duplicates.
+
+-- Existing duplicates must be merged before the key can be added; this lists them:
+-- SELECT product_name, expiration_date, COUNT(*) FROM product
+-- GROUP BY product_name, expiration_date HAVING COUNT(*) > 1;
+
+ALTER TABLE product
+    ADD CONSTRAINT uk_product_lot UNIQUE (product_name, expiration_date);
@@ -0,0 +1,9 @@
+-- A basket holds one line per product. LineService.ajouter upserts on this key,
+-- so two volunteers adding the same product to the same basket increase one line.
+
+-- Existing duplicates must be merged before the key can be added; this lists them:
+-- SELECT basket_id, product_id, COUNT(*) FROM line
+-- GROUP BY basket_id, product_id HAVING COUNT(*) > 1;
+
+ALTER TABLE line
+    ADD CONSTRAINT uk_line_basket_product UNIQUE (basket_id, product_id);
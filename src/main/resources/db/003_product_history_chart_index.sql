@@ -0,0 +1,3 @@
+-- The Stat chart reads product_history by product name over a date range.
+ALTER TABLE product_history
+    ADD INDEX idx_product_history_name_modified (product_name, modified_at);
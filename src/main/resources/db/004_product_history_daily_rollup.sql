@@ -0,0 +1,50 @@
+-- Per-product daily aggregates of product_history.
+-- Kept up to date by the trigger below on every history insert (ProductService, StockReservationService,
+-- ExcelUploader); HistoryRollup.backfill rebuilds it from the raw rows (run test.RollupBackfill once after
+-- applying this script, and it runs automatically for the products touched by an Excel import).
+
+CREATE TABLE product_history_daily (
+    product_id       INT          NOT NULL,
+    day              DATE         NOT NULL,
+    product_name     VARCHAR(255) NOT NULL,
+    opening_qty      INT          NOT NULL,  -- closing quantity of the previous day that has history
+    closing_qty      INT          NOT NULL,  -- quantity of the last history row of the day
+    min_qty          INT          NOT NULL,
+    max_qty          INT          NOT NULL,
+    inflow           INT          NOT NULL,  -- sum of the increases during the day
+    outflow          INT          NOT NULL,  -- sum of the decreases during the day
+    samples          INT          NOT NULL,
+    last_modified_at DATETIME     NOT NULL,
+    PRIMARY KEY (product_id, day),
+    INDEX idx_product_history_daily_name_day (product_name, day)
+);
+
+DELIMITER //
+CREATE TRIGGER trg_product_history_daily
+AFTER INSERT ON product_history
+FOR EACH ROW
+BEGIN
+    DECLARE previous_qty INT DEFAULT 0;
+
+    SELECT closing_qty INTO previous_qty
+    FROM product_history_daily
+    WHERE product_id = NEW.product_id AND day < DATE(NEW.modified_at)
+    ORDER BY day DESC
+    LIMIT 1;
+
+    INSERT INTO product_history_daily (product_id, day, product_name, opening_qty, closing_qty, min_qty, max_qty,
+                                       inflow, outflow, samples, last_modified_at)
+    VALUES (NEW.product_id, DATE(NEW.modified_at), NEW.product_name, previous_qty, NEW.quantity,
+            LEAST(previous_qty, NEW.quantity), GREATEST(previous_qty, NEW.quantity),
+            GREATEST(NEW.quantity - previous_qty, 0), GREATEST(previous_qty - NEW.quantity, 0), 1, NEW.modified_at)
+    ON DUPLICATE KEY UPDATE
+        inflow           = inflow + GREATEST(VALUES(closing_qty) - closing_qty, 0),
+        outflow          = outflow + GREATEST(closing_qty - VALUES(closing_qty), 0),
+        min_qty          = LEAST(min_qty, VALUES(closing_qty)),
+        max_qty          = GREATEST(max_qty, VALUES(closing_qty)),
+        samples          = samples + 1,
+        product_name     = VALUES(product_name),
+        closing_qty      = VALUES(closing_qty),
+        last_modified_at = VALUES(last_modified_at);
+END//
+DELIMITER ;
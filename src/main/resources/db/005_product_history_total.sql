@@ -0,0 +1,12 @@
+-- Running balance of product_history per lot, so ProductService.ajouter does not have to
+-- SUM the lot's whole history on every intake.
+--   history_total         = SUM(product_history.quantity) of the lot
+--   last_history_quantity = quantity written to product_history by the last ajouter
+-- Both are updated in the same statement as the product row they belong to.
+
+ALTER TABLE product
+    ADD COLUMN history_total BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN last_history_quantity INT NOT NULL DEFAULT 0;
+
+UPDATE product p
+SET p.history_total = (SELECT COALESCE(SUM(h.quantity), 0) FROM product_history h WHERE h.product_id = p.product_id);
@@ -0,0 +1,3 @@
+-- Keyset pagination of the product table (ShowProduct) walks (expiration_date, product_id).
+ALTER TABLE product
+    ADD INDEX idx_product_expiration_id (expiration_date, product_id);
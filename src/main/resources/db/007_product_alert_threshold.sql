@@ -0,0 +1,8 @@
+-- Per-lot stock alert thresholds (StockAlertEngine). Lots without a row use the
+-- stock.alert.low / stock.alert.critical defaults.
+CREATE TABLE product_alert_threshold (
+    product_id   INT NOT NULL PRIMARY KEY,
+    low_qty      INT NOT NULL,
+    critical_qty INT NOT NULL,
+    CONSTRAINT fk_alert_threshold_product FOREIGN KEY (product_id) REFERENCES product (product_id) ON DELETE CASCADE
+);
@@ -0,0 +1,8 @@
+-- Write-behind history (-Dhistory.writeBehind=true, HistoryWriteBehind).
+-- Each terminal's journal records how far it has been written to product_history.
+-- The row is updated in the same transaction as the history batch, so replaying the
+-- journal after a crash never inserts a history row twice.
+CREATE TABLE history_journal_checkpoint (
+    journal  VARCHAR(255) NOT NULL PRIMARY KEY,
+    last_seq BIGINT       NOT NULL
+);
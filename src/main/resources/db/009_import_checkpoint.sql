@@ -0,0 +1,8 @@
+-- Progress of Excel imports into product_history (ProductHistoryBatchWriter), one row per source file.
+-- rows_committed is updated in the same transaction as each chunk of rows, so an interrupted import
+-- resumes after exactly the rows that are in the table. The row is deleted when the import finishes.
+CREATE TABLE import_checkpoint (
+    source         VARCHAR(512) NOT NULL PRIMARY KEY,  -- absolute path of the imported file
+    signature      VARCHAR(64)  NOT NULL,              -- size:lastModified, a different file starts over
+    rows_committed BIGINT       NOT NULL
+);
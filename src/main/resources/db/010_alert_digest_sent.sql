@@ -0,0 +1,10 @@
+-- Items sent in SMS stock digests (AlertDigest), shared by all terminals.
+-- A terminal lists an item only if it inserts the row, or moves sent_at_ms forward once it is
+-- older than alert.digest.repeatAfterMs, so the same alert is not sent once per terminal.
+-- Rows older than that are deleted by the hourly expiry scan.
+CREATE TABLE alert_digest_sent (
+    recipient  VARCHAR(32) NOT NULL,
+    item_key   VARCHAR(64) NOT NULL,  -- productId:kind, e.g. 42:LOW
+    sent_at_ms BIGINT      NOT NULL,  -- epoch milliseconds
+    PRIMARY KEY (recipient, item_key)
+);